@@ -0,0 +1,82 @@
+package com.mattermost.helpers
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class AvatarDecodeBenchmark {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val iconWidth = context.resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+    private val iconHeight = context.resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+
+    @Test
+    fun decodeAvatar() {
+        val bytes = encode(1024, 1024)
+
+        var fullBytes = 0
+        val before = Timing.measure("avatar decode before") {
+            val bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.size)
+            fullBytes = bitmap.allocationByteCount
+            bitmap.recycle()
+        }
+        var iconBytes = 0
+        val after = Timing.measure("avatar decode after") {
+            val bitmap = CustomPushNotificationHelper.decodeIcon(context, bytes)
+            iconBytes = bitmap.allocationByteCount
+            bitmap.recycle()
+        }
+        android.util.Log.i("Benchmark", "avatar allocation before=${fullBytes}B after=${iconBytes}B")
+        Timing.report(before, after)
+
+        assertTrue(iconBytes < fullBytes)
+    }
+
+    @Test
+    fun nonSquareAvatarIsCroppedAroundItsCenter() {
+        // Red band on the left and right, blue in the middle square
+        val bitmap = CustomPushNotificationHelper.decodeIcon(context, encode(900, 300, bands = true))
+
+        assertEquals(iconWidth, bitmap.width)
+        assertEquals(iconHeight, bitmap.height)
+        assertEquals(Color.BLUE, opaque(bitmap.getPixel(1, bitmap.height / 2)))
+        assertEquals(Color.BLUE, opaque(bitmap.getPixel(bitmap.width - 2, bitmap.height / 2)))
+    }
+
+    @Test
+    fun smallAvatarIsNotScaledUp() {
+        val bitmap = CustomPushNotificationHelper.decodeIcon(context, encode(iconWidth / 2, iconHeight / 2))
+
+        assertEquals(iconWidth / 2, bitmap.width)
+        assertEquals(iconHeight / 2, bitmap.height)
+    }
+
+    private fun encode(width: Int, height: Int, bands: Boolean = false): ByteArray {
+        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(bitmap)
+        canvas.drawColor(if (bands) Color.RED else Color.GRAY)
+        if (bands) {
+            val paint = Paint()
+            paint.color = Color.BLUE
+            val left = (width - height) / 2f
+            canvas.drawRect(left, 0f, left + height, height.toFloat(), paint)
+        }
+        val out = ByteArrayOutputStream()
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+        bitmap.recycle()
+        return out.toByteArray()
+    }
+
+    private fun opaque(color: Int): Int = color or 0xFF000000.toInt()
+}
@@ -0,0 +1,91 @@
+package com.mattermost.helpers
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class ConditionalRequestTest {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val server = MockWebServer()
+    private val endpoint = "/api/v4/channels/channel-id"
+    private val body = """{"id":"channel-id"}"""
+    private val conditionalReceived = CountDownLatch(1)
+    private lateinit var serverUrl: String
+
+    @Before
+    fun setUp() {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                if (request.getHeader("If-None-Match") == "\"v1\"") {
+                    conditionalReceived.countDown()
+                    return MockResponse().setResponseCode(304).setHeadersDelay(500, TimeUnit.MILLISECONDS)
+                }
+                return MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setHeader("ETag", "\"v1\"")
+                        .setBody(body)
+            }
+        }
+        server.start()
+        serverUrl = server.url("/").toString().trimEnd('/')
+        Network.init(context)
+    }
+
+    @After
+    fun tearDown() {
+        Network.purgeServerCache(serverUrl)
+        server.shutdown()
+    }
+
+    @Test
+    fun notModifiedIsAnsweredWithTheCachedBody() {
+        Network.getSyncConditional(serverUrl, endpoint, null).use { assertEquals(body, it.body?.string()) }
+
+        Network.getSyncConditional(serverUrl, endpoint, null).use { response ->
+            assertEquals(200, response.code)
+            assertEquals(body, response.body?.string())
+        }
+        server.takeRequest()
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun requestWithoutValidatorsDoesNotJoinAConditionalOne() {
+        Network.getSyncConditional(serverUrl, endpoint, null).close()
+
+        val executor = Executors.newFixedThreadPool(2)
+        try {
+            val conditional = executor.submit<String> {
+                Network.getSyncConditional(serverUrl, endpoint, null).use { it.body?.string() }
+            }
+            assertTrue(conditionalReceived.await(5, TimeUnit.SECONDS))
+
+            // The cached response is gone while the conditional request is still in flight
+            Network.purgeServerCache(serverUrl)
+            val unconditional = executor.submit<Pair<Int, String?>> {
+                Network.getSyncConditional(serverUrl, endpoint, null).use { Pair(it.code, it.body?.string()) }
+            }
+
+            assertEquals(Pair(200, body), unconditional.get(5, TimeUnit.SECONDS))
+            assertEquals(body, conditional.get(5, TimeUnit.SECONDS))
+            assertEquals(3, server.requestCount)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mattermost.helpers
+
+import androidx.security.crypto.EncryptedSharedPreferences
+import androidx.security.crypto.MasterKey
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.bridge.WritableMap
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class CredentialsBenchmark {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val serverUrl = "https://benchmark.example.com"
+
+    @Before
+    fun setUp() {
+        Credentials.getSecurePreferences(context).edit().putString(serverUrl, "token").commit()
+        Credentials.invalidate(serverUrl)
+        Network.init(context)
+    }
+
+    @After
+    fun tearDown() {
+        Credentials.getSecurePreferences(context).edit().remove(serverUrl).commit()
+        Credentials.invalidate(serverUrl)
+    }
+
+    @Test
+    fun addHeaders() {
+        val before = Timing.measure("addHeaders before") { addHeadersFromNewPreferences() }
+        val uncached = Timing.measure("addHeaders uncached", setUp = { Credentials.invalidate(serverUrl) }) {
+            Network.addHeaders(serverUrl, null)
+        }
+        val after = Timing.measure("addHeaders after") { Network.addHeaders(serverUrl, null) }
+
+        Timing.report(before, uncached)
+        Timing.report(before, after)
+        assertEquals("Bearer token", Network.addHeaders(serverUrl, null).getMap("headers")?.getString("Authorization"))
+    }
+
+    @Test
+    fun invalidatedTokenIsReadAgain() {
+        assertEquals("token", Credentials.getCredentialsForServerSync(context, serverUrl))
+
+        Credentials.getSecurePreferences(context).edit().putString(serverUrl, "new token").commit()
+        Credentials.invalidate(serverUrl)
+
+        assertEquals("new token", Credentials.getCredentialsForServerSync(context, serverUrl))
+    }
+
+    private fun addHeadersFromNewPreferences(): WritableMap {
+        val masterKey = MasterKey.Builder(context)
+                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                .build()
+        val prefs = EncryptedSharedPreferences.create(
+                context,
+                "ik_secure_prefs",
+                masterKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+        )
+
+        val options = Arguments.createMap()
+        val headers = Arguments.createMap()
+        prefs.getString(serverUrl, null)?.let {
+            headers.putString("Authorization", "Bearer $it")
+            headers.putString("Content-Type", "application/json")
+        }
+        options.putMap("headers", headers)
+        return options
+    }
+}
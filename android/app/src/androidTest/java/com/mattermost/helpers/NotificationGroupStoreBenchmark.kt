@@ -0,0 +1,83 @@
+package com.mattermost.helpers
+
+import android.content.Context
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.mattermost.rnutils.helpers.NotificationGroupStore
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class NotificationGroupStoreBenchmark {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val servers = (1..5).map { "https://server-$it.example.com" }
+    private val legacyPreferences = context.getSharedPreferences("NotificationGroupStoreBenchmark", Context.MODE_PRIVATE)
+
+    @Before
+    fun setUp() {
+        NotificationGroupStore.clear(context)
+        val legacy = JSONObject()
+        for (server in servers) {
+            val groups = JSONObject()
+            for (group in 0 until 500) {
+                val groupId = "group-$group"
+                NotificationGroupStore.add(context, server, groupId, groupId.hashCode())
+                groups.put(groupId, JSONObject().put(groupId.hashCode().toString(), false).put((groupId.hashCode() + 1).toString(), true))
+            }
+            legacy.put(server, groups)
+        }
+        legacyPreferences.edit().putString("notificationsInGroup", legacy.toString()).commit()
+    }
+
+    @After
+    fun tearDown() {
+        NotificationGroupStore.clear(context)
+        legacyPreferences.edit().clear().commit()
+    }
+
+    @Test
+    fun addNotification() {
+        var id = 0
+        val before = Timing.measure("notification group add before") {
+            legacyAdd(servers[id % servers.size], "group-${id % 500}", id++)
+        }
+        val after = Timing.measure("notification group add after") {
+            NotificationGroupStore.add(context, servers[id % servers.size], "group-${id % 500}", id++)
+        }
+
+        Timing.report(before, after)
+        assertTrue(NotificationGroupStore.hasGroup(context, servers[0], "group-0"))
+    }
+
+    @Test
+    fun removeGroup() {
+        var group = 0
+        Timing.measure("notification group remove", iterations = 100) {
+            NotificationGroupStore.removeGroup(context, servers[0], "group-${group++}")
+        }
+
+        assertFalse(NotificationGroupStore.hasGroup(context, servers[0], "group-0"))
+        assertTrue(NotificationGroupStore.hasGroup(context, servers[1], "group-0"))
+    }
+
+    private fun legacyAdd(serverUrl: String, groupId: String, notificationId: Int) {
+        val json = JSONObject(legacyPreferences.getString("notificationsInGroup", "{}")!!)
+        val server = json.optJSONObject(serverUrl) ?: JSONObject()
+        val group = server.optJSONObject(groupId) ?: JSONObject()
+        val createSummary = group.length() == 0
+        group.put(notificationId.toString(), false)
+        if (createSummary) {
+            group.put((notificationId + 1).toString(), true)
+        }
+        server.put(groupId, group)
+        json.put(serverUrl, server)
+        legacyPreferences.edit().putString("notificationsInGroup", json.toString()).apply()
+    }
+}
@@ -0,0 +1,179 @@
+package com.mattermost.helpers
+
+import android.database.sqlite.SQLiteDatabase
+import android.os.Bundle
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.mattermost.helpers.database_extension.getDatabaseForServer
+import com.mattermost.helpers.database_extension.releaseDatabase
+import com.nozbe.watermelondb.WMDatabase
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Processes a push of a thread reply end to end against a MockWebServer answering every request after
+ * [LATENCY_MS]. The requests that do not depend on each other are sent at once, so the push takes about as long
+ * as the longest chain (channel -> profiles -> users) instead of the sum of all the round trips.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class PushNotificationFanOutTest {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val dbHelper = DatabaseHelper.instance!!
+    private val server = MockWebServer()
+    private val appDatabaseFile = File(context.cacheDir, "push_fan_out_app.db")
+    private val serverDatabaseFile = File(context.cacheDir, "push_fan_out_server.db")
+    private val inFlight = AtomicInteger()
+    private val maxInFlight = AtomicInteger()
+    private var previousDefaultDatabase: WMDatabase? = null
+    private lateinit var appDatabase: WMDatabase
+    private lateinit var serverUrl: String
+
+    private val responses = mapOf(
+            "/api/v4/teams/team-id" to """{"id":"team-id","name":"team","display_name":"Team","type":"O"}""",
+            "/api/v4/teams/team-id/members/me" to """{"team_id":"team-id","user_id":"user-me","roles":"team_user"}""",
+            "/api/v4/channels/channel-id" to
+                    """{"id":"channel-id","type":"D","team_id":"","name":"user-me__user-1","display_name":"",""" +
+                    """"total_msg_count":2,"total_msg_count_root":1,"last_post_at":1700000000100,"last_root_post_at":1700000000000}""",
+            "/api/v4/channels/channel-id/members/me" to
+                    """{"channel_id":"channel-id","user_id":"user-me","msg_count":0,"msg_count_root":0,"mention_count":1,"mention_count_root":1}""",
+            "/api/v4/users" to """[{"id":"user-1","username":"one"}]""",
+            "/api/v4/posts/root-id/thread" to """
+                {"order":["reply-id","root-id"],"posts":{
+                  "root-id":{"id":"root-id","channel_id":"channel-id","user_id":"user-1","root_id":"","message":"root","create_at":1700000000000,
+                    "update_at":1700000000000,"delete_at":0,"reply_count":1,"participants":[{"id":"user-1","username":"one"}]},
+                  "reply-id":{"id":"reply-id","channel_id":"channel-id","user_id":"user-5","root_id":"root-id","message":"hi @six",
+                    "create_at":1700000000100,"update_at":1700000000100,"delete_at":0}
+                }}
+            """.trimIndent(),
+            "/api/v4/users/user-me/teams/team-id/threads/root-id" to
+                    """{"id":"root-id","reply_count":1,"last_reply_at":1700000000100,"participants":[{"id":"user-1","username":"one"}],"is_following":true}""",
+            "/api/v4/users/user-me/teams/team-id/channels/categories" to """{"categories":[],"order":[]}""",
+            "/api/v4/users/ids" to """[{"id":"user-5","username":"five"}]""",
+            "/api/v4/users/usernames" to """[{"id":"user-6","username":"six"}]""",
+    )
+
+    @Before
+    fun setUp() {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+                try {
+                    Thread.sleep(LATENCY_MS)
+                } finally {
+                    inFlight.decrementAndGet()
+                }
+                val body = responses[request.requestUrl?.encodedPath] ?: return MockResponse().setResponseCode(404)
+                return MockResponse().setHeader("Content-Type", "application/json").setBody(body)
+            }
+        }
+        server.start()
+        serverUrl = server.url("/").toString().trimEnd('/')
+        Network.init(context)
+
+        appDatabaseFile.delete()
+        serverDatabaseFile.delete()
+        appDatabase = WMDatabase.buildDatabase(appDatabaseFile.path, context, SQLiteDatabase.CREATE_IF_NECESSARY)
+        appDatabase.execute("CREATE TABLE Servers (id PRIMARY KEY, url, identifier, db_path, last_active_at)", emptyArray())
+        appDatabase.execute("CREATE TABLE Global (id PRIMARY KEY, value)", emptyArray())
+        appDatabase.execute(
+                "INSERT INTO Servers (id, url, identifier, db_path, last_active_at) VALUES (?, ?, ?, ?, ?)",
+                arrayOf("server", serverUrl, "server-id", serverDatabaseFile.path, 1.0)
+        )
+        previousDefaultDatabase = dbHelper.defaultDatabase
+        dbHelper.defaultDatabase = appDatabase
+        dbHelper.refreshServers(context)
+
+        val db = dbHelper.getDatabaseForServer(context, serverUrl)!!
+        try {
+            for ((table, columns) in SERVER_TABLES) {
+                db.execute("CREATE TABLE $table (id PRIMARY KEY, $columns)", emptyArray())
+            }
+            db.execute("INSERT INTO System (id, value) VALUES (?, ?)", arrayOf("currentUserId", "\"user-me\""))
+            db.execute("INSERT INTO User (id, username, locale) VALUES (?, ?, ?)", arrayOf("user-me", "me", "en"))
+        } finally {
+            dbHelper.releaseDatabase(db)
+        }
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        dbHelper.defaultDatabase = previousDefaultDatabase
+        // The server is no longer registered, its pooled database is closed
+        dbHelper.refreshServers(context)
+        appDatabase.close()
+        appDatabaseFile.delete()
+        serverDatabaseFile.delete()
+    }
+
+    @Test
+    fun independentRequestsAreSentAtOnce() = runBlocking {
+        val push = Bundle()
+        push.putString("server_url", serverUrl)
+        push.putString("team_id", "team-id")
+        push.putString("channel_id", "channel-id")
+        push.putString("post_id", "reply-id")
+        push.putString("root_id", "root-id")
+        push.putString("is_crt_enabled", "true")
+
+        val start = System.nanoTime()
+        val result = PushNotificationDataRunnable.start(context, push, true)
+        val elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        val requests = server.requestCount
+        Log.i("Benchmark", "push fan out: $requests requests of ${LATENCY_MS}ms in ${elapsedMs}ms, " +
+                "sent one after the other they would take at least ${requests * LATENCY_MS}ms, at most $maxInFlight at once")
+
+        assertNotNull(result)
+        assertEquals(responses.size, requests)
+        // team, team member, channel, channel member, posts and thread do not wait for each other
+        assertTrue("$maxInFlight requests at once", maxInFlight.get() >= 4)
+        assertTrue("took ${elapsedMs}ms", elapsedMs < requests * LATENCY_MS / 2)
+
+        @Suppress("DEPRECATION")
+        val users = result!!.get("users") as List<*>
+        val userIds = users.map { (it as Bundle).getString("id") }
+        assertEquals(listOf("user-1", "user-5", "user-6"), userIds)
+        assertTrue(result.containsKey("team"))
+        assertTrue(result.containsKey("myChannel"))
+        assertTrue(result.containsKey("categories"))
+        assertTrue(result.containsKey("posts"))
+        assertTrue(result.containsKey("threads"))
+    }
+
+    companion object {
+        private const val LATENCY_MS = 300L
+
+        // Columns of the server schema read while fetching the data of a push
+        private val SERVER_TABLES = mapOf(
+                "System" to "value",
+                "Config" to "value",
+                "User" to "username, locale, last_picture_update",
+                "Team" to "name",
+                "MyTeam" to "roles",
+                "Channel" to "type",
+                "MyChannel" to "last_fetched_at",
+                "Preference" to "category, name, value",
+                "Post" to "channel_id, root_id, create_at, delete_at",
+                "PostsInChannel" to "channel_id, earliest, latest",
+                "Category" to "type, team_id",
+                "CategoryChannel" to "category_id, channel_id",
+        )
+    }
+}
@@ -0,0 +1,79 @@
+package com.mattermost.helpers
+
+import android.util.Base64
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import io.jsonwebtoken.JwtException
+import io.jsonwebtoken.Jwts
+import org.junit.After
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.security.KeyPair
+import java.security.KeyPairGenerator
+import java.security.spec.ECGenParameterSpec
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class SignatureVerifierBenchmark {
+    private val serverUrl = "https://benchmark.example.com"
+    private val storedDeviceToken = "android_rn-v2:device-token$"
+    private val keyPair = generateKeyPair()
+    private val signingKey = Base64.encodeToString(keyPair.public.encoded, Base64.NO_WRAP)
+    private val signature = sign(keyPair, "device-token", "ack-id")
+
+    @After
+    fun tearDown() {
+        CustomPushNotificationHelper.invalidateSignatureVerifier(serverUrl)
+    }
+
+    @Test
+    fun verifyPerPush() {
+        val cold = Timing.measure("verify cold", setUp = { CustomPushNotificationHelper.invalidateSignatureVerifier(serverUrl) }) {
+            assertTrue(CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, storedDeviceToken, signature, "ack-id"))
+        }
+        val warm = Timing.measure("verify warm") {
+            assertTrue(CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, storedDeviceToken, signature, "ack-id"))
+        }
+
+        Timing.report(cold, warm)
+    }
+
+    @Test
+    fun cachedVerifierStillChecksTheClaims() {
+        assertTrue(CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, storedDeviceToken, signature, "ack-id"))
+        assertFalse(CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, storedDeviceToken, signature, "other-ack-id"))
+
+        // Signed with another key, the parse fails (verifySignature maps it to false)
+        val otherSignature = sign(generateKeyPair(), "device-token", "ack-id")
+        assertThrows(JwtException::class.java) {
+            CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, storedDeviceToken, otherSignature, "ack-id")
+        }
+    }
+
+    @Test
+    fun verifierIsBuiltAgainWhenTheDeviceTokenChanges() {
+        assertTrue(CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, storedDeviceToken, signature, "ack-id"))
+
+        // Signed for the previous device token, the device_id claim no longer matches
+        assertThrows(JwtException::class.java) {
+            CustomPushNotificationHelper.verifyClaims(serverUrl, signingKey, "android_rn-v2:new-device-token$", signature, "ack-id")
+        }
+    }
+
+    private fun generateKeyPair(): KeyPair {
+        val generator = KeyPairGenerator.getInstance("EC")
+        generator.initialize(ECGenParameterSpec("secp256r1"))
+        return generator.generateKeyPair()
+    }
+
+    private fun sign(keyPair: KeyPair, deviceId: String, ackId: String): String {
+        return Jwts.builder()
+                .claim("device_id", deviceId)
+                .claim("ack_id", ackId)
+                .signWith(keyPair.private)
+                .compact()
+    }
+}
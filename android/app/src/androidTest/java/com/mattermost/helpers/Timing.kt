@@ -0,0 +1,48 @@
+package com.mattermost.helpers
+
+import android.util.Log
+
+/**
+ * Minimal timing harness for the instrumented benchmarks, the results are logged under the "Benchmark" tag
+ */
+internal object Timing {
+    private const val TAG = "Benchmark"
+
+    class Result(val name: String, val medianNs: Long, val p95Ns: Long) {
+        override fun toString(): String {
+            return "$name median=${medianNs / 1_000}us p95=${p95Ns / 1_000}us"
+        }
+    }
+
+    /**
+     * Runs [block] [warmup] times, then [iterations] times timed. [setUp] runs before every iteration and is not timed.
+     */
+    fun measure(name: String, iterations: Int = 50, warmup: Int = 5, setUp: () -> Unit = {}, block: () -> Unit): Result {
+        repeat(warmup) {
+            setUp()
+            block()
+        }
+
+        val durations = LongArray(iterations)
+        for (i in 0 until iterations) {
+            setUp()
+            val start = System.nanoTime()
+            block()
+            durations[i] = System.nanoTime() - start
+        }
+        durations.sort()
+
+        val result = Result(name, durations[iterations / 2], durations[((iterations - 1) * 95) / 100])
+        Log.i(TAG, result.toString())
+        return result
+    }
+
+    /**
+     * Logs how the medians of two runs of the same work compare. The timings are only reported, they depend
+     * too much on the device and its load to fail a test.
+     */
+    fun report(before: Result, after: Result) {
+        val speedup = before.medianNs.toDouble() / after.medianNs.coerceAtLeast(1)
+        Log.i(TAG, "${before.name} -> ${after.name}: ${String.format("%.1f", speedup)}x")
+    }
+}
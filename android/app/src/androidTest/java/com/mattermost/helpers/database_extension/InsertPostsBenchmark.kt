@@ -0,0 +1,197 @@
+package com.mattermost.helpers.database_extension
+
+import android.database.sqlite.SQLiteDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.mattermost.helpers.DatabaseHelper
+import com.mattermost.helpers.RandomId
+import com.mattermost.helpers.Timing
+import com.mattermost.helpers.push_notification.Post
+import com.mattermost.helpers.push_notification.PostList
+import com.nozbe.watermelondb.WMDatabase
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.io.StringReader
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class InsertPostsBenchmark {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val channelId = "channel-id"
+    private val databaseFile = File(context.cacheDir, "insert_posts_benchmark.db")
+    private lateinit var db: WMDatabase
+    private lateinit var postList: PostList
+
+    @Before
+    fun setUp() {
+        databaseFile.delete()
+        db = WMDatabase.buildDatabase(databaseFile.path, context, SQLiteDatabase.CREATE_IF_NECESSARY)
+        for (table in TABLES) {
+            db.execute("CREATE TABLE ${table.key} (id PRIMARY KEY, ${table.value.joinToString(", ")}, _changed, _status)", emptyArray())
+        }
+        postList = PostList.parse(StringReader(postsResponse(POST_COUNT)))
+    }
+
+    @After
+    fun tearDown() {
+        StatementCache.release(db)
+        db.close()
+        databaseFile.delete()
+    }
+
+    @Test
+    fun insertPosts() {
+        val posts = postList.posts.values
+        val before = Timing.measure("insert $POST_COUNT posts before", iterations = 10, warmup = 2, setUp = ::clearTables) {
+            db.transaction { posts.forEach { insertPostWithExecute(it) } }
+        }
+        val after = Timing.measure("insert $POST_COUNT posts after", iterations = 10, warmup = 2, setUp = ::clearTables) {
+            db.transaction { posts.forEach { insertPost(db, it) } }
+        }
+
+        Timing.report(before, after)
+        assertEquals(POST_COUNT, count("Post"))
+        assertEquals(POST_COUNT * 2, count("Reaction"))
+        assertEquals(POST_COUNT, count("File"))
+    }
+
+    @Test
+    fun handlePostsStoresThePostsWithTheirReactionsAndFiles() {
+        db.transaction { DatabaseHelper.instance!!.handlePosts(db, postList, channelId, false) }
+
+        assertEquals(POST_COUNT, count("Post"))
+        assertEquals(POST_COUNT * 2, count("Reaction"))
+        assertEquals(POST_COUNT, count("File"))
+        assertEquals(1, count("PostsInChannel"))
+
+        // Received again, the posts are updated and the reactions that did not change are kept
+        db.transaction { DatabaseHelper.instance!!.handlePosts(db, postList, channelId, false) }
+
+        assertEquals(POST_COUNT, count("Post"))
+        assertEquals(POST_COUNT * 2, count("Reaction"))
+    }
+
+    private fun insertPostWithExecute(post: Post) {
+        db.execute(
+                """
+                INSERT INTO Post 
+                (id, channel_id, create_at, delete_at, update_at, edit_at, is_pinned, message, message_source, metadata, original_id, pending_post_id, 
+                previous_post_id, root_id, type, user_id, props, _changed, _status) 
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, '', 'created')
+                """.trimIndent(),
+                arrayOf(
+                        post.id, post.channelId, post.createAt, post.deleteAt, post.updateAt, post.editAt,
+                        post.isPinned, post.message, post.messageSource, post.metadataJson(),
+                        post.originalId, post.pendingPostId, post.prevPostId ?: "", post.rootId,
+                        post.type, post.userId, post.propsJson()
+                )
+        )
+        for (reaction in post.reactions) {
+            db.execute(
+                    """
+                    INSERT INTO Reaction 
+                    (id, create_at, emoji_name, post_id, user_id, _changed, _status) 
+                    VALUES (?, ?, ?, ?, ?, '', 'created')
+                    """.trimIndent(),
+                    arrayOf(RandomId.generate(), reaction.createAt, reaction.emojiName, reaction.postId, reaction.userId)
+            )
+        }
+        for (file in post.files) {
+            db.execute(
+                    """
+                    INSERT INTO File 
+                    (id, extension, height, image_thumbnail, local_path, mime_type, name, post_id, size, width, _changed, _status) 
+                    VALUES (?, ?, ?, ?, '', ?, ?, ?, ?, ?, '', 'created')
+                    """.trimIndent(),
+                    arrayOf(file.id, file.extension, file.height, file.miniPreview, file.mimeType, file.name, file.postId, file.size, file.width)
+            )
+        }
+    }
+
+    private fun clearTables() {
+        db.transaction {
+            TABLES.keys.forEach { db.execute("DELETE FROM $it", emptyArray()) }
+        }
+    }
+
+    private fun count(table: String): Int {
+        db.rawQuery("SELECT COUNT(*) FROM $table", emptyArray()).use { cursor ->
+            cursor.moveToFirst()
+            return cursor.getInt(0)
+        }
+    }
+
+    private fun postsResponse(count: Int): String {
+        val order = JSONArray()
+        val posts = JSONObject()
+        for (i in 0 until count) {
+            val id = "post-$i"
+            val createAt = 1_700_000_000_000.0 + i
+            val metadata = JSONObject()
+                    .put("reactions", JSONArray()
+                            .put(reaction(id, "user-1", "smile", createAt))
+                            .put(reaction(id, "user-2", "+1", createAt)))
+                    .put("files", JSONArray().put(JSONObject()
+                            .put("id", "file-$i")
+                            .put("post_id", id)
+                            .put("name", "image-$i.png")
+                            .put("extension", "png")
+                            .put("mime_type", "image/png")
+                            .put("size", 2048)
+                            .put("width", 640)
+                            .put("height", 480)
+                            .put("mini_preview", "")))
+            posts.put(id, JSONObject()
+                    .put("id", id)
+                    .put("channel_id", channelId)
+                    .put("user_id", "user-${i % 10}")
+                    .put("root_id", "")
+                    .put("type", "")
+                    .put("message", "Message number $i")
+                    .put("create_at", createAt)
+                    .put("update_at", createAt)
+                    .put("delete_at", 0)
+                    .put("edit_at", 0)
+                    .put("is_pinned", false)
+                    .put("props", JSONObject())
+                    .put("metadata", metadata))
+            order.put(id)
+        }
+        return JSONObject().put("order", order).put("posts", posts).toString()
+    }
+
+    private fun reaction(postId: String, userId: String, emojiName: String, createAt: Double): JSONObject {
+        return JSONObject()
+                .put("post_id", postId)
+                .put("user_id", userId)
+                .put("emoji_name", emojiName)
+                .put("create_at", createAt)
+    }
+
+    companion object {
+        private const val POST_COUNT = 1_000
+
+        // Columns of the server schema written by handlePosts
+        private val TABLES = mapOf(
+                "Post" to listOf(
+                        "channel_id", "create_at", "delete_at", "edit_at", "is_pinned", "message", "message_source", "metadata",
+                        "original_id", "pending_post_id", "previous_post_id", "props", "root_id", "type", "update_at", "user_id"
+                ),
+                "Reaction" to listOf("create_at", "emoji_name", "post_id", "user_id"),
+                "File" to listOf(
+                        "extension", "height", "image_thumbnail", "local_path", "mime_type", "name", "post_id", "size", "width",
+                        "transcript", "is_blocked"
+                ),
+                "CustomEmoji" to listOf("name"),
+                "PostsInChannel" to listOf("channel_id", "earliest", "latest"),
+                "PostsInThread" to listOf("earliest", "latest", "root_id"),
+        )
+    }
+}
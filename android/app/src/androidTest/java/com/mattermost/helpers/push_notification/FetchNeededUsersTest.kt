@@ -0,0 +1,120 @@
+package com.mattermost.helpers.push_notification
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.bridge.ReadableArray
+import com.facebook.react.bridge.ReadableMap
+import com.mattermost.helpers.Network
+import com.mattermost.helpers.PushNotificationDataRunnable
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.json.JSONArray
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class FetchNeededUsersTest {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val server = MockWebServer()
+    private val bodies = HashMap<String, List<String>>()
+    private var latencyMs = 0L
+    private lateinit var serverUrl: String
+
+    @Before
+    fun setUp() {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val requested = JSONArray(request.body.readUtf8())
+                val values = (0 until requested.length()).map { requested.getString(it) }
+                val path = request.path ?: ""
+                synchronized(bodies) { bodies[path] = values }
+
+                val users = when (path) {
+                    "/api/v4/users/ids" -> values.joinToString(",") { user(it, "name-$it") }
+                    "/api/v4/users/usernames" -> values.joinToString(",") { user("id-$it", it) }
+                    else -> return MockResponse().setResponseCode(404)
+                }
+                return MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("[$users]")
+                        .setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS)
+            }
+        }
+        server.start()
+        serverUrl = server.url("/").toString().trimEnd('/')
+        Network.init(context)
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun loadedUsersAreNotFetchedOrAddedAgain() = runBlocking {
+        val loadedUsers = users(Pair("alice-id", "alice"))
+        val data = PostsResult(
+                PostList(emptyList(), emptyMap(), null, null),
+                null,
+                listOf("alice-id", "bob-id"),
+                listOf("alice", "carol"),
+                users(Pair("alice-id", "alice"), Pair("dave-id", "dave"))
+        )
+
+        val users = PushNotificationDataRunnable.fetchNeededUsers(serverUrl, loadedUsers, data)
+
+        assertEquals(listOf("bob-id"), bodies["/api/v4/users/ids"])
+        assertEquals(listOf("carol"), bodies["/api/v4/users/usernames"])
+        assertEquals(
+                listOf("alice-id", "bob-id", "id-carol", "dave-id"),
+                users.map { (it as ReadableMap).getString("id") }
+        )
+    }
+
+    @Test
+    fun usersByIdAndByUsernameAreFetchedConcurrently() = runBlocking {
+        latencyMs = 500L
+        val data = PostsResult(
+                PostList(emptyList(), emptyMap(), null, null),
+                null,
+                listOf("bob-id"),
+                listOf("carol"),
+                null
+        )
+
+        val start = System.nanoTime()
+        val users = PushNotificationDataRunnable.fetchNeededUsers(serverUrl, null, data)
+        val elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        assertEquals(2, users.size)
+        assertEquals(2, server.requestCount)
+        // Both round trips overlap, sequential requests would take at least twice the latency
+        assertTrue("took ${elapsedMs}ms", elapsedMs < 2 * latencyMs)
+    }
+
+    private fun user(id: String, username: String): String {
+        return """{"id":"$id","username":"$username"}"""
+    }
+
+    private fun users(vararg users: Pair<String, String>): ReadableArray {
+        val array = Arguments.createArray()
+        for ((id, username) in users) {
+            val map = Arguments.createMap()
+            map.putString("id", id)
+            map.putString("username", username)
+            array.pushMap(map)
+        }
+        return array
+    }
+}
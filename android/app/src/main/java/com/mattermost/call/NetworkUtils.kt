@@ -25,7 +25,7 @@ object NetworkUtils {
     suspend fun getUserIdFromConference(serverId: String, conferenceId: String): String? {
         return suspendCoroutine { cont ->
             val serverUrl = DatabaseHelper.instance?.getServerUrlForIdentifier(serverId)
-            Network.get(
+            Network.getShared(
                 serverUrl,
                 "/api/v4/conferences/$conferenceId",
                 getOptions(),
@@ -49,7 +49,7 @@ object NetworkUtils {
     suspend fun getUserImage(serverId: String, userId: String): ByteArray {
         return suspendCoroutine { cont ->
             val serverUrl = DatabaseHelper.instance?.getServerUrlForIdentifier(serverId)
-            val response = Network.getSync(serverUrl, "/api/v4/users/$userId/image", getOptions())
+            val response = Network.getSyncShared(serverUrl, "/api/v4/users/$userId/image", getOptions())
             if (response.code == 200) {
                 cont.resumeWith(Result.success(response.body!!.bytes()))
             } else {
@@ -0,0 +1,125 @@
+package com.mattermost.helpers
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import java.io.File
+import java.io.FileOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.Executors
+
+/**
+ * Disk tier of [BitmapCache], so the avatars survive the cold start of a process woken up by a push.
+ *
+ * Each file holds the icon of a user for a given `last_picture_update`, ready to be displayed. The files
+ * of a server and user share the same prefix so older pictures are deleted when a newer one is stored.
+ * The least recently used files are deleted once the directory grows over [maxSize] bytes.
+ */
+class AvatarDiskCache(private val directory: File, private val maxSize: Long) {
+    // File names by access order along with their size, loaded from the directory on first use
+    private var entries: LinkedHashMap<String, Long>? = null
+    private var size = 0L
+    private val writer = Executors.newSingleThreadExecutor()
+
+    fun get(serverUrl: String, userId: String, updatedAt: Double): Bitmap? {
+        val name = fileName(serverUrl, userId, updatedAt)
+        synchronized(this) {
+            if (loadEntries()[name] == null) {
+                return null
+            }
+        }
+
+        val file = File(directory, name)
+        val bitmap = BitmapFactory.decodeFile(file.absolutePath)
+        if (bitmap == null) {
+            remove(name)
+            return null
+        }
+        file.setLastModified(System.currentTimeMillis())
+        return bitmap
+    }
+
+    fun put(serverUrl: String, userId: String, updatedAt: Double, bitmap: Bitmap) {
+        val prefix = filePrefix(serverUrl, userId)
+        val name = fileName(serverUrl, userId, updatedAt)
+        writer.execute {
+            try {
+                directory.mkdirs()
+                val tmp = File(directory, "$name.tmp")
+                FileOutputStream(tmp).use { bitmap.compress(Bitmap.CompressFormat.PNG, 100, it) }
+                val file = File(directory, name)
+                if (!tmp.renameTo(file)) {
+                    tmp.delete()
+                    return@execute
+                }
+
+                synchronized(this) {
+                    val entries = loadEntries()
+                    entries.keys.filter { it.startsWith(prefix) && it != name }.forEach { removeEntry(it) }
+                    entries.remove(name)?.let { size -= it }
+                    entries[name] = file.length()
+                    size += file.length()
+                    trim()
+                }
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+    }
+
+    @Synchronized
+    fun remove(serverUrl: String, userId: String) {
+        val prefix = filePrefix(serverUrl, userId)
+        loadEntries().keys.filter { it.startsWith(prefix) }.forEach { removeEntry(it) }
+    }
+
+    @Synchronized
+    fun clear() {
+        loadEntries().keys.toList().forEach { removeEntry(it) }
+    }
+
+    @Synchronized
+    private fun remove(name: String) {
+        removeEntry(name)
+    }
+
+    private fun removeEntry(name: String) {
+        entries?.remove(name)?.let { size -= it }
+        File(directory, name).delete()
+    }
+
+    private fun trim() {
+        val iterator = loadEntries().entries.iterator()
+        while (size > maxSize && iterator.hasNext()) {
+            val eldest = iterator.next()
+            iterator.remove()
+            size -= eldest.value
+            File(directory, eldest.key).delete()
+        }
+    }
+
+    private fun loadEntries(): LinkedHashMap<String, Long> {
+        entries?.let { return it }
+
+        val loaded = LinkedHashMap<String, Long>(16, 0.75f, true)
+        size = 0L
+        directory.listFiles()
+                ?.filter { it.isFile && !it.name.endsWith(".tmp") }
+                ?.sortedBy { it.lastModified() }
+                ?.forEach {
+                    loaded[it.name] = it.length()
+                    size += it.length()
+                }
+        entries = loaded
+        trim()
+        return loaded
+    }
+
+    private fun filePrefix(serverUrl: String, userId: String): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest("$serverUrl-$userId".toByteArray())
+        return digest.joinToString("") { "%02x".format(it) } + "-"
+    }
+
+    private fun fileName(serverUrl: String, userId: String, updatedAt: Double): String {
+        return "${filePrefix(serverUrl, userId)}${updatedAt.toLong()}.png"
+    }
+}
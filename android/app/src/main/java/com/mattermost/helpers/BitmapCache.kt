@@ -1,13 +1,33 @@
 package com.mattermost.helpers
 
+import android.content.Context
 import android.graphics.Bitmap
 import android.util.LruCache
+import com.mattermost.rnutils.helpers.PushTracer
+import java.io.File
+import java.util.concurrent.atomic.AtomicLong
 
+/**
+ * Avatars displayed in the notifications, cropped to a circle at the size of the notification icons.
+ *
+ * The memory cache is backed by an [AvatarDiskCache] so a process started for a push does not need
+ * to download the avatars again.
+ */
 class BitmapCache {
     private var memoryCache: LruCache<String, Bitmap>
     private var keysCache: LruCache<String, String>
+    private var diskCache: AvatarDiskCache? = null
+
+    // Reported with the push notification stats
+    private val memoryHits = AtomicLong(0)
+    private val diskHits = AtomicLong(0)
+    private val misses = AtomicLong(0)
 
     init {
+        PushTracer.registerCounter("avatar_memory_hits") { memoryHits.get() }
+        PushTracer.registerCounter("avatar_disk_hits") { diskHits.get() }
+        PushTracer.registerCounter("avatar_misses") { misses.get() }
+
         val maxMemory = (Runtime.getRuntime().maxMemory() / 1024).toInt()
         val cacheSize = maxMemory / 8
         memoryCache = object : LruCache<String, Bitmap>(cacheSize) {
@@ -18,32 +38,63 @@ class BitmapCache {
         keysCache = LruCache<String, String>(50)
     }
 
-    fun bitmap(userId: String, updatedAt: Double, serverUrl: String): Bitmap? {
+    fun bitmap(context: Context, userId: String, updatedAt: Double, serverUrl: String): Bitmap? {
         val key = "$serverUrl-$userId-$updatedAt"
-        return memoryCache.get(key)
+        memoryCache.get(key)?.let {
+            memoryHits.incrementAndGet()
+            return it
+        }
+
+        val bitmap = disk(context).get(serverUrl, userId, updatedAt)
+        if (bitmap == null) {
+            misses.incrementAndGet()
+            return null
+        }
+
+        diskHits.incrementAndGet()
+        keysCache.put("$serverUrl-$userId", key)
+        memoryCache.put(key, bitmap)
+        return bitmap
     }
 
-    fun insertBitmap(bitmap: Bitmap?, userId: String, updatedAt: Double, serverUrl: String) {
+    fun insertBitmap(context: Context, bitmap: Bitmap?, userId: String, updatedAt: Double, serverUrl: String) {
         if (bitmap == null) {
-            removeBitmap(userId, serverUrl)
+            removeBitmap(context, userId, serverUrl)
+            return
         }
         val key = "$serverUrl-$userId-$updatedAt"
         val cachedKey = "$serverUrl-$userId"
         keysCache.put(cachedKey, key)
         memoryCache.put(key, bitmap)
+        disk(context).put(serverUrl, userId, updatedAt, bitmap)
     }
 
-    fun removeBitmap(userId: String, serverUrl: String) {
+    fun removeBitmap(context: Context, userId: String, serverUrl: String) {
         val cachedKey = "$serverUrl-$userId"
         val key = keysCache.get(cachedKey)
         if (key != null) {
             memoryCache.remove(key)
             keysCache.remove(cachedKey)
         }
+        disk(context).remove(serverUrl, userId)
     }
 
     fun removeAllBitmaps() {
         memoryCache.evictAll()
         keysCache.evictAll()
+        diskCache?.clear()
+    }
+
+    @Synchronized
+    private fun disk(context: Context): AvatarDiskCache {
+        return diskCache ?: AvatarDiskCache(
+                File(context.applicationContext.cacheDir, DISK_CACHE_DIRECTORY),
+                DISK_CACHE_SIZE
+        ).also { diskCache = it }
+    }
+
+    companion object {
+        private const val DISK_CACHE_DIRECTORY = "notification_avatars"
+        private const val DISK_CACHE_SIZE = 10 * 1024 * 1024L
     }
 }
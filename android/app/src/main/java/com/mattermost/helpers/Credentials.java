@@ -1,40 +1,88 @@
 package com.mattermost.helpers;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 
 import androidx.annotation.Nullable;
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
 
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.WritableMap;
-import com.oblador.keychain.KeychainModule;
-
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
+/**
+ * Bearer tokens stored by the app in the encrypted preferences shared with IkStorageModule.
+ *
+ * Creating the master key and the encrypted preferences goes through the Keystore, so the preferences
+ * are created once per process and the tokens they hold are kept in memory once read. IkStorageModule
+ * calls {@link #invalidate(String)} when a token is written or removed, and the memory copy is dropped
+ * by {@link #clearCache()} when the system asks to trim memory. Each server has a generation bumped on
+ * invalidation, a token read before the invalidation is not put back in memory once it completes.
+ */
 public class Credentials {
-       public static String getCredentialsForServerSync(Context context, String baseUrl) {
-        try {
-            MasterKey masterKey = new MasterKey.Builder(context)
-                    .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-                    .build();
+    private static final String PREFERENCES_NAME = "ik_secure_prefs";
 
-            EncryptedSharedPreferences prefs = (EncryptedSharedPreferences) EncryptedSharedPreferences.create(
-                    context,
-                    "ik_secure_prefs",
-                    masterKey,
-                    EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-                    EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-            );
+    private static volatile SharedPreferences securePreferences;
+    private static final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public static SharedPreferences getSecurePreferences(Context context) throws GeneralSecurityException, IOException {
+        SharedPreferences prefs = securePreferences;
+        if (prefs != null) {
+            return prefs;
+        }
+
+        synchronized (Credentials.class) {
+            if (securePreferences == null) {
+                Context appContext = context.getApplicationContext();
+                MasterKey masterKey = new MasterKey.Builder(appContext)
+                        .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                        .build();
+
+                securePreferences = EncryptedSharedPreferences.create(
+                        appContext,
+                        PREFERENCES_NAME,
+                        masterKey,
+                        EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                        EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+                );
+            }
+            return securePreferences;
+        }
+    }
 
-            return prefs.getString(baseUrl, null);
+    @Nullable
+    public static String getCredentialsForServerSync(Context context, String baseUrl) {
+        String token = tokens.get(baseUrl);
+        if (token != null) {
+            return token;
+        }
 
+        AtomicLong generation = generations.computeIfAbsent(baseUrl, key -> new AtomicLong());
+        long readGeneration = generation.get();
+        try {
+            String stored = getSecurePreferences(context).getString(baseUrl, null);
+            if (stored != null) {
+                // Only cached if the token was not invalidated while it was read
+                tokens.compute(baseUrl, (key, current) -> generation.get() == readGeneration ? stored : current);
+            }
+            return stored;
         } catch (GeneralSecurityException | IOException e) {
             e.printStackTrace();
             return null;
         }
     }
-}
\ No newline at end of file
+
+    public static void invalidate(String baseUrl) {
+        generations.computeIfAbsent(baseUrl, key -> new AtomicLong()).incrementAndGet();
+        tokens.remove(baseUrl);
+    }
+
+    public static void clearCache() {
+        tokens.clear();
+    }
+}
@@ -7,10 +7,12 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
@@ -22,6 +24,7 @@ import android.text.TextUtils;
 import android.util.Base64;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.core.app.Person;
@@ -38,10 +41,13 @@ import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Date;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.jsonwebtoken.IncorrectClaimException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MissingClaimException;
 import okhttp3.OkHttpClient;
@@ -50,6 +56,7 @@ import okhttp3.Response;
 
 import static com.mattermost.helpers.database_extension.GeneralKt.getDatabaseForServer;
 import static com.mattermost.helpers.database_extension.GeneralKt.getDeviceToken;
+import static com.mattermost.helpers.database_extension.GeneralKt.releaseDatabase;
 import static com.mattermost.helpers.database_extension.SystemKt.queryConfigServerVersion;
 import static com.mattermost.helpers.database_extension.SystemKt.queryConfigSigningKey;
 import static com.mattermost.helpers.database_extension.UserKt.getLastPictureUpdate;
@@ -72,7 +79,11 @@ public class CustomPushNotificationHelper {
 
     private static final BitmapCache bitmapCache = new BitmapCache();
 
-    private static void addMessagingStyleMessages(Context context, NotificationCompat.MessagingStyle messagingStyle, String conversationTitle, Bundle bundle) {
+    // Signature verification state, see SignatureVerifier
+    private static final Map<String, Boolean> missingSignatureDecisions = new ConcurrentHashMap<>();
+    private static final Map<String, SignatureVerifier> signatureVerifiers = new ConcurrentHashMap<>();
+
+    private static void addMessagingStyleMessages(Context context, NotificationCompat.MessagingStyle messagingStyle, String conversationTitle, Bundle bundle, boolean cachedAvatarsOnly) {
         String message = bundle.getString("message", bundle.getString("body"));
         String senderId = bundle.getString("sender_id");
         String serverUrl = bundle.getString("server_url");
@@ -94,7 +105,7 @@ public class CustomPushNotificationHelper {
 
         if (serverUrl != null && type != null && !type.equals(CustomPushNotificationHelper.PUSH_TYPE_SESSION)) {
             try {
-                Bitmap avatar = userAvatar(context, serverUrl, senderId, urlOverride);
+                Bitmap avatar = userAvatar(context, serverUrl, senderId, urlOverride, cachedAvatarsOnly);
                 if (avatar != null) {
                     sender.setIcon(IconCompat.createWithBitmap(avatar));
                 }
@@ -187,6 +198,13 @@ public class CustomPushNotificationHelper {
     }
 
     public static NotificationCompat.Builder createNotificationBuilder(Context context, PendingIntent intent, Bundle bundle, boolean createSummary) {
+        return createNotificationBuilder(context, intent, bundle, createSummary, false);
+    }
+
+    /**
+     * @param cachedAvatarsOnly only use the avatars already cached, so the notification can be shown without waiting on the network
+     */
+    public static NotificationCompat.Builder createNotificationBuilder(Context context, PendingIntent intent, Bundle bundle, boolean createSummary, boolean cachedAvatarsOnly) {
         final NotificationCompat.Builder notification = new NotificationCompat.Builder(context, CHANNEL_HIGH_IMPORTANCE_ID);
 
         String channelId = bundle.getString("channel_id");
@@ -198,8 +216,8 @@ public class CustomPushNotificationHelper {
         String groupId = is_crt_enabled && !android.text.TextUtils.isEmpty(rootId) ? rootId : channelId;
 
         addNotificationExtras(notification, bundle);
-        setNotificationIcons(context, notification, bundle);
-        setNotificationMessagingStyle(context, notification, bundle);
+        setNotificationIcons(context, notification, bundle, cachedAvatarsOnly);
+        setNotificationMessagingStyle(context, notification, bundle, cachedAvatarsOnly);
         setNotificationGroup(notification, groupId, createSummary);
         setNotificationBadgeType(notification);
 
@@ -262,6 +280,14 @@ public class CustomPushNotificationHelper {
             return false;
         }
 
+        try {
+            return verifySignature(dbHelper, db, serverUrl, signature, ackId);
+        } finally {
+            releaseDatabase(dbHelper, db);
+        }
+    }
+
+    private static boolean verifySignature(DatabaseHelper dbHelper, WMDatabase db, String serverUrl, String signature, String ackId) {
         if (signature.equals("NO_SIGNATURE")) {
             String version = queryConfigServerVersion(db);
             if (version == null) {
@@ -274,62 +300,16 @@ public class CustomPushNotificationHelper {
                 return false;
             }
 
-            String[] parts = version.split("\\.");
-            int major = parts.length > 0 ? Integer.parseInt(parts[0]) : 0;
-            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
-            int patch = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
-
-            int[][] targets = {{9,8,0},{9,7,3},{9,6,3},{9,5,5},{8,1,14}};
-            boolean rejected = false;
-            for (int i = 0; i < targets.length; i++) {
-                boolean first = i == 0;
-                int[] targetVersion = targets[i];
-                int majorTarget = targetVersion[0];
-                int minorTarget = targetVersion[1];
-                int patchTarget = targetVersion[2];
-
-                if (major > majorTarget) {
-                    // Only reject if we are considering the first (highest) version.
-                    // Any version in between should be acceptable.
-                    rejected = first;
-                    break;
-                }
-
-                if (major < majorTarget) {
-                    // Continue to see if it complies with a smaller target
-                    continue;
-                }
-
-                // Same major
-                if (minor > minorTarget) {
-                    // Only reject if we are considering the first (highest) version.
-                    // Any version in between should be acceptable.
-                    rejected = first;
-                    break;
-                }
-
-                if (minor < minorTarget) {
-                    // Continue to see if it complies with a smaller target
-                    continue;
-                }
-
-                // Same major and same minor
-                if (patch >= patchTarget) {
-                    rejected = true;
-                    break;
-                }
-
-                // Patch is lower than target
-                return true;
+            Boolean accepted = missingSignatureDecisions.get(version);
+            if (accepted == null) {
+                accepted = isMissingSignatureAccepted(version);
+                missingSignatureDecisions.put(version, accepted);
             }
 
-            if (rejected) {
+            if (!accepted) {
                 TurboLog.Companion.i("Mattermost Notifications Signature verification", "Server version should send signature");
-                return false;
             }
-
-            // Version number is below any of the targets, so it should not send the signature
-            return true;
+            return accepted;
         }
 
         String signingKey = queryConfigSigningKey(db);
@@ -339,32 +319,13 @@ public class CustomPushNotificationHelper {
         }
 
         try {
-            byte[] encoded = Base64.decode(signingKey, 0);
-            KeyFactory kf = KeyFactory.getInstance("EC");
-            PublicKey pubKey = (PublicKey) kf.generatePublic(new X509EncodedKeySpec(encoded));
-
             String storedDeviceToken = getDeviceToken(dbHelper);
             if (storedDeviceToken == null) {
                 TurboLog.Companion.i("Mattermost Notifications Signature verification", "No device token stored");
                 return false;
             }
-            String[] tokenParts = storedDeviceToken.split(":", 2);
-            if (tokenParts.length != 2) {
-                TurboLog.Companion.i("Mattermost Notifications Signature verification", "Wrong stored device token format");
-                return false;
-            }
-            String deviceToken = tokenParts[1].substring(0, tokenParts[1].length() -1 );
-            if (deviceToken.isEmpty()) {
-                TurboLog.Companion.i("Mattermost Notifications Signature verification", "Empty stored device token");
-                return false;
-            }
 
-            Jwts.parser()
-                    .require("ack_id", ackId)
-                    .require("device_id", deviceToken)
-                    .verifyWith((PublicKey) pubKey)
-                    .build()
-                    .parseSignedClaims(signature);
+            return verifyClaims(serverUrl, signingKey, storedDeviceToken, signature, ackId);
         } catch (MissingClaimException e) {
             TurboLog.Companion.i("Mattermost Notifications Signature verification", String.format("Missing claim: %s", e.getMessage()));
             e.printStackTrace();
@@ -382,10 +343,188 @@ public class CustomPushNotificationHelper {
             e.printStackTrace();
             return false;
         }
+    }
+
+    /**
+     * Checks the signature with the verifier cached for the server, built again when the signing key
+     * or the device token changed
+     */
+    @VisibleForTesting
+    static boolean verifyClaims(String serverUrl, String signingKey, String storedDeviceToken, String signature, String ackId) throws Exception {
+        SignatureVerifier verifier = signatureVerifiers.get(serverUrl);
+        if (verifier == null || !verifier.isBuiltFrom(signingKey, storedDeviceToken)) {
+            verifier = SignatureVerifier.create(signingKey, storedDeviceToken);
+            if (verifier == null) {
+                return false;
+            }
+            signatureVerifiers.put(serverUrl, verifier);
+        }
+
+        // The ack id differs for every push so it is checked here instead of being required by the cached parser
+        Object claimedAckId = verifier.parser.parseSignedClaims(signature).getPayload().get("ack_id");
+        if (claimedAckId == null) {
+            TurboLog.Companion.i("Mattermost Notifications Signature verification", "Missing claim: ack_id");
+            return false;
+        }
+        if (!claimedAckId.equals(ackId)) {
+            TurboLog.Companion.i("Mattermost Notifications Signature verification", String.format("Incorrect claim: ack_id %s", claimedAckId));
+            return false;
+        }
 
         return true;
     }
 
+    private static boolean isMissingSignatureAccepted(String version) {
+        String[] parts = version.split("\\.");
+        int major = parts.length > 0 ? Integer.parseInt(parts[0]) : 0;
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        int patch = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+
+        int[][] targets = {{9,8,0},{9,7,3},{9,6,3},{9,5,5},{8,1,14}};
+        boolean rejected = false;
+        for (int i = 0; i < targets.length; i++) {
+            boolean first = i == 0;
+            int[] targetVersion = targets[i];
+            int majorTarget = targetVersion[0];
+            int minorTarget = targetVersion[1];
+            int patchTarget = targetVersion[2];
+
+            if (major > majorTarget) {
+                // Only reject if we are considering the first (highest) version.
+                // Any version in between should be acceptable.
+                rejected = first;
+                break;
+            }
+
+            if (major < majorTarget) {
+                // Continue to see if it complies with a smaller target
+                continue;
+            }
+
+            // Same major
+            if (minor > minorTarget) {
+                // Only reject if we are considering the first (highest) version.
+                // Any version in between should be acceptable.
+                rejected = first;
+                break;
+            }
+
+            if (minor < minorTarget) {
+                // Continue to see if it complies with a smaller target
+                continue;
+            }
+
+            // Same major and same minor
+            if (patch >= patchTarget) {
+                rejected = true;
+                break;
+            }
+
+            // Patch is lower than target
+            return true;
+        }
+
+        // Version number is below any of the targets, so it should not send the signature
+        return !rejected;
+    }
+
+    public static void invalidateSignatureVerifier(String serverUrl) {
+        signatureVerifiers.remove(serverUrl);
+    }
+
+    /**
+     * Decoded signing key and JWT parser of a server, reused for every push as long as
+     * the signing key and the device token they were built from do not change
+     */
+    private static class SignatureVerifier {
+        final String signingKey;
+        final String storedDeviceToken;
+        final JwtParser parser;
+
+        private SignatureVerifier(String signingKey, String storedDeviceToken, JwtParser parser) {
+            this.signingKey = signingKey;
+            this.storedDeviceToken = storedDeviceToken;
+            this.parser = parser;
+        }
+
+        boolean isBuiltFrom(String signingKey, String storedDeviceToken) {
+            return this.signingKey.equals(signingKey) && this.storedDeviceToken.equals(storedDeviceToken);
+        }
+
+        static SignatureVerifier create(String signingKey, String storedDeviceToken) throws Exception {
+            String[] tokenParts = storedDeviceToken.split(":", 2);
+            if (tokenParts.length != 2) {
+                TurboLog.Companion.i("Mattermost Notifications Signature verification", "Wrong stored device token format");
+                return null;
+            }
+            String deviceToken = tokenParts[1].substring(0, tokenParts[1].length() -1 );
+            if (deviceToken.isEmpty()) {
+                TurboLog.Companion.i("Mattermost Notifications Signature verification", "Empty stored device token");
+                return null;
+            }
+
+            byte[] encoded = Base64.decode(signingKey, 0);
+            KeyFactory kf = KeyFactory.getInstance("EC");
+            PublicKey pubKey = kf.generatePublic(new X509EncodedKeySpec(encoded));
+
+            JwtParser parser = Jwts.parser()
+                    .require("device_id", deviceToken)
+                    .verifyWith(pubKey)
+                    .build();
+            return new SignatureVerifier(signingKey, storedDeviceToken, parser);
+        }
+    }
+
+    /**
+     * Decodes the image at the size of the notification large icon instead of its full size,
+     * cropped to the aspect ratio of the icon around its center
+     */
+    @VisibleForTesting
+    static Bitmap decodeIcon(Context context, byte[] bytes) {
+        Resources resources = context.getResources();
+        int width = resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        int height = resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        int bitmapWidth = bitmap.getWidth();
+        int bitmapHeight = bitmap.getHeight();
+        // The image is cropped around its center to the aspect ratio of the icon so it is not stretched, then
+        // scaled down to the icon size as the sampling only divides by powers of two. It is never scaled up.
+        float aspectRatio = (float) width / height;
+        int cropWidth = Math.min(bitmapWidth, Math.round(bitmapHeight * aspectRatio));
+        int cropHeight = Math.min(bitmapHeight, Math.round(bitmapWidth / aspectRatio));
+        float scale = Math.min(1f, (float) width / cropWidth);
+        if (scale == 1f && cropWidth == bitmapWidth && cropHeight == bitmapHeight) {
+            return bitmap;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        Bitmap scaled = Bitmap.createBitmap(bitmap, (bitmapWidth - cropWidth) / 2, (bitmapHeight - cropHeight) / 2,
+                cropWidth, cropHeight, matrix, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
     private static Bitmap getCircleBitmap(Bitmap bitmap) {
         final Bitmap output = Bitmap.createBitmap(bitmap.getWidth(),
                 bitmap.getHeight(), Bitmap.Config.ARGB_8888);
@@ -423,7 +562,7 @@ public class CustomPushNotificationHelper {
         return title;
     }
 
-    private static NotificationCompat.MessagingStyle getMessagingStyle(Context context, Bundle bundle) {
+    private static NotificationCompat.MessagingStyle getMessagingStyle(Context context, Bundle bundle, boolean cachedAvatarsOnly) {
         NotificationCompat.MessagingStyle messagingStyle;
         final String senderId = "me";
         final String serverUrl = bundle.getString("server_url");
@@ -436,7 +575,7 @@ public class CustomPushNotificationHelper {
 
         if (serverUrl != null && type != null && !type.equals(CustomPushNotificationHelper.PUSH_TYPE_SESSION)) {
             try {
-                Bitmap avatar = userAvatar(context, serverUrl, "me", urlOverride);
+                Bitmap avatar = userAvatar(context, serverUrl, "me", urlOverride, cachedAvatarsOnly);
                 if (avatar != null) {
                     sender.setIcon(IconCompat.createWithBitmap(avatar));
                 }
@@ -449,7 +588,7 @@ public class CustomPushNotificationHelper {
 
         String conversationTitle = getConversationTitle(bundle);
         setMessagingStyleConversationTitle(messagingStyle, conversationTitle, bundle);
-        addMessagingStyleMessages(context, messagingStyle, conversationTitle, bundle);
+        addMessagingStyleMessages(context, messagingStyle, conversationTitle, bundle, cachedAvatarsOnly);
 
         return messagingStyle;
     }
@@ -531,8 +670,8 @@ public class CustomPushNotificationHelper {
         notification.setDeleteIntent(deleteIntent);
     }
 
-    private static void setNotificationMessagingStyle(Context context, NotificationCompat.Builder notification, Bundle bundle) {
-        NotificationCompat.MessagingStyle messagingStyle = getMessagingStyle(context, bundle);
+    private static void setNotificationMessagingStyle(Context context, NotificationCompat.Builder notification, Bundle bundle, boolean cachedAvatarsOnly) {
+        NotificationCompat.MessagingStyle messagingStyle = getMessagingStyle(context, bundle, cachedAvatarsOnly);
         notification.setStyle(messagingStyle);
     }
 
@@ -545,7 +684,7 @@ public class CustomPushNotificationHelper {
         }
     }
 
-    private static void setNotificationIcons(Context context, NotificationCompat.Builder notification, Bundle bundle) {
+    private static void setNotificationIcons(Context context, NotificationCompat.Builder notification, Bundle bundle, boolean cachedAvatarsOnly) {
         String channelName = getConversationTitle(bundle);
         String senderName = bundle.getString("sender_name");
         String serverUrl = bundle.getString("server_url");
@@ -556,7 +695,7 @@ public class CustomPushNotificationHelper {
         if (serverUrl != null && channelName.equals(senderName)) {
             try {
                 String senderId = bundle.getString("sender_id");
-                Bitmap avatar = userAvatar(context, serverUrl, senderId, urlOverride);
+                Bitmap avatar = userAvatar(context, serverUrl, senderId, urlOverride, cachedAvatarsOnly);
                 if (avatar != null) {
                     notification.setLargeIcon(avatar);
                 }
@@ -566,11 +705,14 @@ public class CustomPushNotificationHelper {
         }
     }
 
-    private static Bitmap userAvatar(final Context context, @NonNull final String serverUrl, final String userId, final String urlOverride) throws IOException {
+    private static Bitmap userAvatar(final Context context, @NonNull final String serverUrl, final String userId, final String urlOverride, boolean cachedOnly) throws IOException {
         try {
             Response response;
             Double lastUpdateAt = 0.0;
             if (!TextUtils.isEmpty(urlOverride)) {
+                if (cachedOnly) {
+                    return null;
+                }
                 Request request = new Request.Builder().url(urlOverride).build();
                 TurboLog.Companion.i("ReactNative", String.format("Fetch override profile image %s", urlOverride));
                 response = client.newCall(request).execute();
@@ -583,29 +725,38 @@ public class CustomPushNotificationHelper {
                         if (lastUpdateAt == null) {
                             lastUpdateAt = 0.0;
                         }
-                        db.close();
+                        releaseDatabase(dbHelper, db);
                     }
                 }
-                Bitmap cached = bitmapCache.bitmap(userId, lastUpdateAt, serverUrl);
+                Bitmap cached = bitmapCache.bitmap(context, userId, lastUpdateAt, serverUrl);
                 if (cached != null) {
-                    Bitmap bitmap = cached.copy(cached.getConfig(), false);
-                    return getCircleBitmap(bitmap);
+                    // Cached avatars are only read, the notifications can share them
+                    return cached;
+                }
+
+                if (cachedOnly) {
+                    return null;
                 }
 
-                bitmapCache.removeBitmap(userId, serverUrl);
+                bitmapCache.removeBitmap(context, userId, serverUrl);
                 String url = String.format("api/v4/users/%s/image", userId);
                 TurboLog.Companion.i("ReactNative", String.format("Fetch profile image %s", url));
-                response = Network.getSync(serverUrl, url, null);
+                response = Network.getSyncShared(serverUrl, url, null);
             }
 
             if (response.code() == 200) {
                 assert response.body() != null;
                 byte[] bytes = Objects.requireNonNull(response.body()).bytes();
-                Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                Bitmap bitmap = decodeIcon(context, bytes);
+                if (bitmap == null) {
+                    return null;
+                }
+
+                Bitmap icon = getCircleBitmap(bitmap);
                 if (TextUtils.isEmpty(urlOverride) && !TextUtils.isEmpty(userId)) {
-                    bitmapCache.insertBitmap(bitmap.copy(bitmap.getConfig(), false), userId, lastUpdateAt, serverUrl);
+                    bitmapCache.insertBitmap(context, icon, userId, lastUpdateAt, serverUrl);
                 }
-                return getCircleBitmap(bitmap);
+                return icon;
             }
 
             return null;
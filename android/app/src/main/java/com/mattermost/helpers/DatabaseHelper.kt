@@ -11,21 +11,21 @@ import java.lang.Exception
 
 import org.json.JSONArray
 import org.json.JSONObject
+import java.util.concurrent.atomic.AtomicInteger
 
 typealias QueryArgs = Array<Any?>
 
 class DatabaseHelper {
     var defaultDatabase: WMDatabase? = null
+    internal val databasePool = DatabasePool()
+    internal val serverRegistry = ServerRegistry()
 
     val onlyServerUrl: String?
         get() {
             try {
-                val query = "SELECT url FROM Servers WHERE last_active_at != 0 AND identifier != ''"
-                defaultDatabase!!.rawQuery(query).use { cursor ->
-                    if (cursor.count == 1) {
-                        cursor.moveToFirst()
-                        return cursor.getString(0)
-                    }
+                val servers = findServers { it.lastActiveAt != 0.0 && it.identifier.isNotEmpty() }
+                if (servers.size == 1) {
+                    return servers[0].url
                 }
             } catch (e: Exception) {
                 e.printStackTrace()
@@ -46,6 +46,65 @@ class DatabaseHelper {
         defaultDatabase = WMDatabase.getInstance(databasePath, context)
     }
 
+    /**
+     * Servers matching the predicate, the registry is reloaded once from app.db when nothing matches
+     * in case the server was added after it was cached
+     */
+    internal fun findServers(predicate: (ServerRegistry.Server) -> Boolean): List<ServerRegistry.Server> {
+        val db = defaultDatabase!!
+        val servers = serverRegistry.servers(db).filter(predicate)
+        if (servers.isNotEmpty()) {
+            return servers
+        }
+
+        serverRegistry.invalidate()
+        return serverRegistry.servers(db).filter(predicate)
+    }
+
+    /**
+     * Called when the app changes the Servers or the device token stored in app.db,
+     * closes the databases of the servers that were removed or logged out and drops the replies still
+     * waiting to be sent to them. [onClosed] is called once the databases are closed, after the pushes
+     * still using them are done.
+     */
+    fun refreshServers(context: Context, onClosed: (() -> Unit)? = null) {
+        val evicted = LinkedHashSet<String>()
+        try {
+            val (previous, servers) = serverRegistry.refresh(defaultDatabase!!)
+            val current = servers.associateBy { it.url }
+            for (server in previous) {
+                val updated = current[server.url]
+                val removed = updated == null || updated.databasePath != server.databasePath
+                val loggedOut = server.identifier.isNotEmpty() && updated?.identifier.isNullOrEmpty()
+                if (removed || loggedOut) {
+                    evicted.add(server.databasePath)
+                    CustomPushNotificationHelper.invalidateSignatureVerifier(server.url)
+                    Network.purgeServerCache(server.url)
+                    ReplyOutbox.purge(context, server.url)
+                }
+            }
+
+            // Any database still open for a server that is no longer there, even if it was not seen in the registry
+            val activePaths = servers.filter { it.identifier.isNotEmpty() }.map { it.databasePath }.toHashSet()
+            databasePool.paths().filterTo(evicted) { it !in activePaths }
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+
+        if (evicted.isEmpty()) {
+            onClosed?.invoke()
+            return
+        }
+        val remaining = AtomicInteger(evicted.size)
+        for (databasePath in evicted) {
+            databasePool.evict(databasePath) {
+                if (remaining.decrementAndGet() == 0) {
+                    onClosed?.invoke()
+                }
+            }
+        }
+    }
+
     internal fun JSONObject.toMap(): Map<String, Any?> = keys().asSequence().associateWith { it ->
         when (val value = this[it])
         {
@@ -0,0 +1,115 @@
+package com.mattermost.helpers
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import com.mattermost.helpers.database_extension.StatementCache
+import com.nozbe.watermelondb.WMDatabase
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps the server databases opened by the native side alive between pushes.
+ *
+ * Handles are reference counted by database path, every [acquire] must be paired with a [release].
+ * A handle that is no longer used is closed after [idleTimeoutMs], or right away once it is evicted
+ * because the server was removed.
+ */
+class DatabasePool(private val idleTimeoutMs: Long = DEFAULT_IDLE_TIMEOUT_MS) {
+    private class Entry(val db: WMDatabase) {
+        var references = 0
+        var evicted = false
+        var idleTask: ScheduledFuture<*>? = null
+        val onClosed = ArrayList<() -> Unit>()
+    }
+
+    private val entries = HashMap<String, Entry>()
+    private val scheduler = Executors.newSingleThreadScheduledExecutor()
+
+    @Synchronized
+    fun acquire(context: Context, databasePath: String): WMDatabase {
+        val entry = entries.getOrPut(databasePath) {
+            Entry(WMDatabase.buildDatabase(databasePath, context, SQLiteDatabase.CREATE_IF_NECESSARY))
+        }
+        entry.idleTask?.cancel(false)
+        entry.idleTask = null
+        entry.evicted = false
+        entry.references++
+        return entry.db
+    }
+
+    @Synchronized
+    fun release(db: WMDatabase) {
+        val item = entries.entries.firstOrNull { it.value.db === db }
+        if (item == null) {
+            // Not a pooled handle
+            StatementCache.release(db)
+            db.close()
+            return
+        }
+
+        val (databasePath, entry) = item
+        entry.references--
+        if (entry.references > 0) {
+            return
+        }
+
+        if (entry.evicted) {
+            close(databasePath, entry)
+        } else {
+            entry.idleTask = scheduler.schedule({ closeIfIdle(databasePath, entry) }, idleTimeoutMs, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Closes the database once it is no longer used, [onClosed] is called when it is (or was not open)
+     */
+    @Synchronized
+    fun evict(databasePath: String, onClosed: (() -> Unit)? = null) {
+        val entry = entries[databasePath]
+        if (entry == null) {
+            onClosed?.invoke()
+            return
+        }
+
+        onClosed?.let { entry.onClosed.add(it) }
+        if (entry.references > 0) {
+            // Still in use, it will be closed by the last release
+            entry.evicted = true
+        } else {
+            close(databasePath, entry)
+        }
+    }
+
+    /**
+     * Paths of the databases currently open
+     */
+    @Synchronized
+    fun paths(): Set<String> {
+        return entries.keys.toHashSet()
+    }
+
+    @Synchronized
+    private fun closeIfIdle(databasePath: String, entry: Entry) {
+        if (entry.references == 0 && entries[databasePath] === entry) {
+            close(databasePath, entry)
+        }
+    }
+
+    private fun close(databasePath: String, entry: Entry) {
+        entry.idleTask?.cancel(false)
+        entries.remove(databasePath)
+        try {
+            StatementCache.release(entry.db)
+            entry.db.close()
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+        entry.onClosed.forEach { it() }
+        entry.onClosed.clear()
+    }
+
+    companion object {
+        const val DEFAULT_IDLE_TIMEOUT_MS = 30_000L
+    }
+}
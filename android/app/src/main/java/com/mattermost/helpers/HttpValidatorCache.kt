@@ -0,0 +1,124 @@
+package com.mattermost.helpers
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.security.MessageDigest
+
+/**
+ * Responses of the GET requests sent with [Network.getSyncConditional] along with their ETag and Last-Modified
+ * validators, so the next request for the same resource can be answered with a 304 instead of the whole body.
+ *
+ * Each server has its own directory, removed by [purge] when the server is removed or logged out. The least
+ * recently used entries are deleted once the cache grows over [maxSize] bytes.
+ */
+class HttpValidatorCache(private val directory: File, private val maxSize: Long) {
+    class Entry(val etag: String?, val lastModified: String?, val body: ByteArray)
+
+    // Relative paths by access order along with their size, loaded from the directory on first use
+    private var entries: LinkedHashMap<String, Long>? = null
+    private var size = 0L
+
+    @Synchronized
+    fun get(serverUrl: String, endpoint: String, authorization: String?): Entry? {
+        val path = entryPath(serverUrl, endpoint, authorization)
+        if (loadEntries()[path] == null) {
+            return null
+        }
+
+        return try {
+            DataInputStream(FileInputStream(File(directory, path))).use { input ->
+                val etag = input.readUTF()
+                val lastModified = input.readUTF()
+                val body = ByteArray(input.readInt())
+                input.readFully(body)
+                Entry(etag.ifEmpty { null }, lastModified.ifEmpty { null }, body)
+            }
+        } catch (e: Exception) {
+            removeEntry(path)
+            null
+        }
+    }
+
+    @Synchronized
+    fun put(serverUrl: String, endpoint: String, authorization: String?, entry: Entry) {
+        val path = entryPath(serverUrl, endpoint, authorization)
+        try {
+            val file = File(directory, path)
+            file.parentFile?.mkdirs()
+            DataOutputStream(FileOutputStream(file)).use { output ->
+                output.writeUTF(entry.etag ?: "")
+                output.writeUTF(entry.lastModified ?: "")
+                output.writeInt(entry.body.size)
+                output.write(entry.body)
+            }
+
+            val entries = loadEntries()
+            entries.remove(path)?.let { size -= it }
+            entries[path] = file.length()
+            size += file.length()
+            trim()
+        } catch (e: Exception) {
+            e.printStackTrace()
+            removeEntry(path)
+        }
+    }
+
+    @Synchronized
+    fun remove(serverUrl: String, endpoint: String, authorization: String?) {
+        removeEntry(entryPath(serverUrl, endpoint, authorization))
+    }
+
+    @Synchronized
+    fun purge(serverUrl: String) {
+        val prefix = hash(serverUrl) + File.separator
+        loadEntries().keys.filter { it.startsWith(prefix) }.forEach { removeEntry(it) }
+        File(directory, hash(serverUrl)).deleteRecursively()
+    }
+
+    private fun removeEntry(path: String) {
+        entries?.remove(path)?.let { size -= it }
+        File(directory, path).delete()
+    }
+
+    private fun trim() {
+        val iterator = loadEntries().entries.iterator()
+        while (size > maxSize && iterator.hasNext()) {
+            val eldest = iterator.next()
+            iterator.remove()
+            size -= eldest.value
+            File(directory, eldest.key).delete()
+        }
+    }
+
+    private fun loadEntries(): LinkedHashMap<String, Long> {
+        entries?.let { return it }
+
+        val loaded = LinkedHashMap<String, Long>(16, 0.75f, true)
+        size = 0L
+        directory.listFiles()?.filter { it.isDirectory }?.forEach { server ->
+            server.listFiles()
+                    ?.filter { it.isFile }
+                    ?.sortedBy { it.lastModified() }
+                    ?.forEach {
+                        loaded[server.name + File.separator + it.name] = it.length()
+                        size += it.length()
+                    }
+        }
+        entries = loaded
+        trim()
+        return loaded
+    }
+
+    private fun entryPath(serverUrl: String, endpoint: String, authorization: String?): String {
+        // The responses depend on the user, so the credentials are part of the key
+        return hash(serverUrl) + File.separator + hash("$endpoint\n$authorization")
+    }
+
+    private fun hash(value: String): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest(value.toByteArray())
+        return digest.joinToString("") { "%02x".format(it) }
+    }
+}
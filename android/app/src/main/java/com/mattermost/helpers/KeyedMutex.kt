@@ -0,0 +1,43 @@
+package com.mattermost.helpers
+
+import androidx.annotation.VisibleForTesting
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Hands out one coroutine Mutex per key so that work on unrelated keys can run in parallel
+ * while work on the same key is still serialized.
+ *
+ * Entries are reference counted and removed as soon as nobody holds or waits for them,
+ * so the registry does not grow with every key that was ever used.
+ */
+class KeyedMutex {
+    private class Entry {
+        val mutex = Mutex()
+        var users = 0
+    }
+
+    private val entries = HashMap<String, Entry>()
+
+    @get:VisibleForTesting
+    internal val size: Int
+        get() = synchronized(entries) { entries.size }
+
+    suspend fun <T> withLock(key: String, action: suspend () -> T): T {
+        // The monitor is only held for the bookkeeping, never across a suspension point
+        val entry = synchronized(entries) {
+            entries.getOrPut(key) { Entry() }.also { it.users++ }
+        }
+
+        try {
+            return entry.mutex.withLock { action() }
+        } finally {
+            synchronized(entries) {
+                entry.users--
+                if (entry.users == 0) {
+                    entries.remove(key)
+                }
+            }
+        }
+    }
+}
@@ -8,12 +8,18 @@ import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.mattermost.networkclient.ApiClientModuleImpl;
 import com.mattermost.networkclient.enums.RetryTypes;
+import com.mattermost.rnutils.helpers.PushTracer;
 import com.mattermost.turbolog.TurboLog;
 
+import java.io.File;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import okhttp3.HttpUrl;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 
 
@@ -21,6 +27,13 @@ public class Network {
     private static ApiClientModuleImpl clientModule;
     private static final WritableMap clientOptions = Arguments.createMap();
     private static final Promise emptyPromise = new ResolvePromise();
+    private static final SingleFlight singleFlight = new SingleFlight();
+    private static final long VALIDATOR_CACHE_SIZE = 2 * 1024 * 1024;
+    private static HttpValidatorCache validatorCache;
+    private static final ExecutorService prewarmExecutor = Executors.newSingleThreadExecutor();
+    private static final Map<String, Long> lastUsedAt = new ConcurrentHashMap<>();
+    private static final Map<String, Object> clientLocks = new ConcurrentHashMap<>();
+    private static volatile long prewarmIdleTimeout = 5 * 60 * 1000;
     private static Context context;
 
     public static void init(Context context) {
@@ -28,11 +41,50 @@ public class Network {
         if (clientModule == null) {
             clientModule = new ApiClientModuleImpl(context);
             createClientOptions();
+            PushTracer.INSTANCE.registerCounter("network_shared_requests", Network::getSharedRequestCount);
+            PushTracer.INSTANCE.registerCounter("network_deduplicated_requests", Network::getDeduplicatedRequestCount);
         } else {
             TurboLog.Companion.i("ReactNative", "Network already initialized");
         }
     }
 
+    /**
+     * Creates the client of the server and opens its connection in the background, so the DNS lookup and the
+     * TCP and TLS handshakes are done by the time the first request of a push is sent.
+     * Nothing is done if the server was used within the idle timeout, its connection is still pooled.
+     * The ping does not need to be authenticated, the token is not sent.
+     */
+    public static void prewarm(String baseUrl) {
+        if (clientModule == null || baseUrl == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Long lastUsed = lastUsedAt.put(baseUrl, now);
+        if (lastUsed != null && now - lastUsed < prewarmIdleTimeout) {
+            return;
+        }
+
+        prewarmExecutor.execute(() -> {
+            try {
+                createClientIfNeeded(baseUrl);
+                WritableMap options = Arguments.createMap();
+                options.putMap("headers", Arguments.createMap());
+                clientModule.get(baseUrl, "/api/v4/system/ping", options, emptyPromise);
+            } catch (Exception e) {
+                TurboLog.Companion.i("ReactNative", String.format("Could not prewarm the connection to %s: %s", baseUrl, e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * How long a server connection is considered warm after its last use, it should not exceed the keep alive
+     * of the pooled connections (5 minutes by default)
+     */
+    public static void setPrewarmIdleTimeout(long timeoutMs) {
+        prewarmIdleTimeout = timeoutMs;
+    }
+
     public static WritableMap addHeaders(String baseUrl, ReadableMap options) {
         WritableMap newOptions;
         if (options == null) {
@@ -41,6 +93,10 @@ public class Network {
             newOptions = toWritableMap(options.toHashMap());
         }
         WritableMap headers = Arguments.createMap();
+        ReadableMap optionHeaders = options != null && options.hasKey("headers") ? options.getMap("headers") : null;
+        if (optionHeaders != null) {
+            headers.merge(optionHeaders);
+        }
 
         String token = Credentials.getCredentialsForServerSync(Network.context, baseUrl);
 
@@ -119,6 +175,16 @@ public class Network {
         clientModule.get(baseUrl, endpoint, addHeaders(baseUrl, options), promise);
     }
 
+    /**
+     * Same as {@link #get(String, String, ReadableMap, Promise)}, joining the identical request in flight if there is one
+     */
+    public static void getShared(String baseUrl, String endpoint, ReadableMap options, Promise promise) {
+        createClientIfNeeded(baseUrl);
+        WritableMap requestOptions = addHeaders(baseUrl, options);
+        singleFlight.get(sharedRequestKey(baseUrl, endpoint, requestOptions), promise,
+                p -> clientModule.get(baseUrl, endpoint, requestOptions, p));
+    }
+
     public static void post(String baseUrl, String endpoint, ReadableMap options, Promise promise) {
         createClientIfNeeded(baseUrl);
         clientModule.post(baseUrl, endpoint, addHeaders(baseUrl, options), promise);
@@ -129,11 +195,130 @@ public class Network {
         return clientModule.getSync(baseUrl, endpoint, addHeaders(baseUrl, options));
     }
 
+    /**
+     * Same as {@link #getSync(String, String, ReadableMap)}, joining the identical request in flight if there is one.
+     * The response body is read in memory to be shared.
+     */
+    public static Response getSyncShared(String baseUrl, String endpoint, ReadableMap options) {
+        createClientIfNeeded(baseUrl);
+        WritableMap requestOptions = addHeaders(baseUrl, options);
+        return singleFlight.getSync(sharedRequestKey(baseUrl, endpoint, requestOptions),
+                () -> clientModule.getSync(baseUrl, endpoint, requestOptions));
+    }
+
+    /**
+     * Same as {@link #getSyncShared(String, String, ReadableMap)}, sending the validators of the last response
+     * received for the endpoint. A 304 is answered with the cached body as a 200 so callers do not need to handle it.
+     */
+    public static Response getSyncConditional(String baseUrl, String endpoint, ReadableMap options) {
+        HttpValidatorCache cache = getValidatorCache();
+        String authorization = authorization(addHeaders(baseUrl, null));
+        HttpValidatorCache.Entry entry = cache != null ? cache.get(baseUrl, endpoint, authorization) : null;
+
+        WritableMap requestOptions = Arguments.createMap();
+        if (options != null) {
+            requestOptions.merge(options);
+        }
+        if (entry != null) {
+            WritableMap headers = Arguments.createMap();
+            ReadableMap optionHeaders = options != null && options.hasKey("headers") ? options.getMap("headers") : null;
+            if (optionHeaders != null) {
+                headers.merge(optionHeaders);
+            }
+            if (entry.getEtag() != null) {
+                headers.putString("If-None-Match", entry.getEtag());
+            }
+            if (entry.getLastModified() != null) {
+                headers.putString("If-Modified-Since", entry.getLastModified());
+            }
+            requestOptions.putMap("headers", headers);
+        }
+
+        Response response = getSyncShared(baseUrl, endpoint, requestOptions);
+        if (cache == null) {
+            return response;
+        }
+
+        if (response.code() == 304 && entry != null) {
+            response.close();
+            return response.newBuilder()
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(entry.getBody(), null))
+                    .build();
+        }
+
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        ResponseBody body = response.body();
+        if (response.code() != 200 || body == null || (etag == null && lastModified == null)) {
+            if (entry != null) {
+                cache.remove(baseUrl, endpoint, authorization);
+            }
+            return response;
+        }
+
+        try {
+            byte[] bytes = body.bytes();
+            cache.put(baseUrl, endpoint, authorization, new HttpValidatorCache.Entry(etag, lastModified, bytes));
+            return response.newBuilder().body(ResponseBody.create(bytes, body.contentType())).build();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read the response of " + endpoint, e);
+        }
+    }
+
+    /**
+     * Deletes the responses cached for a server that was removed or logged out
+     */
+    public static void purgeServerCache(String baseUrl) {
+        HttpValidatorCache cache = getValidatorCache();
+        if (cache != null) {
+            cache.purge(baseUrl);
+        }
+    }
+
+    public static long getDeduplicatedRequestCount() {
+        return singleFlight.getDeduplicatedCount();
+    }
+
+    public static long getSharedRequestCount() {
+        return singleFlight.getExecutedCount();
+    }
+
     public static Response postSync(String baseUrl, String endpoint, ReadableMap options) {
         createClientIfNeeded(baseUrl);
         return clientModule.postSync(baseUrl, endpoint, addHeaders(baseUrl, options));
     }
 
+    /**
+     * Requests are only shared when they would get the same response, the validators are part of the key
+     * as a request without them cannot be answered with the 304 of a conditional one
+     */
+    private static String sharedRequestKey(String baseUrl, String endpoint, ReadableMap options) {
+        return baseUrl + "\n" + endpoint + "\n" + authorization(options) + "\n" +
+                header(options, "If-None-Match") + "\n" + header(options, "If-Modified-Since");
+    }
+
+    private static String authorization(ReadableMap options) {
+        return header(options, "Authorization");
+    }
+
+    private static String header(ReadableMap options, String name) {
+        ReadableMap headers = options.hasKey("headers") ? options.getMap("headers") : null;
+        if (headers != null && headers.hasKey(name)) {
+            return headers.getString(name);
+        }
+        return null;
+    }
+
+    private static synchronized HttpValidatorCache getValidatorCache() {
+        if (validatorCache == null && context != null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), "http_validators");
+            validatorCache = new HttpValidatorCache(directory, VALIDATOR_CACHE_SIZE);
+        }
+        return validatorCache;
+    }
+
     private static void createClientOptions() {
         WritableMap headers = Arguments.createMap();
         headers.putString("X-Requested-With", "XMLHttpRequest");
@@ -158,9 +343,21 @@ public class Network {
     }
 
     private static void createClientIfNeeded(String baseUrl) {
+        if (baseUrl == null) {
+            return;
+        }
+
+        lastUsedAt.put(baseUrl, System.currentTimeMillis());
         HttpUrl url = HttpUrl.parse(baseUrl);
-        if (url != null && !clientModule.hasClientFor(url)) {
-            clientModule.createClientFor(baseUrl, clientOptions, emptyPromise);
+        if (url == null) {
+            return;
+        }
+
+        // Locked per server, creating the client of a server does not hold the requests to the other ones
+        synchronized (clientLocks.computeIfAbsent(baseUrl, key -> new Object())) {
+            if (!clientModule.hasClientFor(url)) {
+                clientModule.createClientFor(baseUrl, clientOptions, emptyPromise);
+            }
         }
     }
 }
@@ -0,0 +1,83 @@
+package com.mattermost.helpers
+
+import com.mattermost.rnutils.helpers.PushTracer
+import com.mattermost.turbolog.TurboLog
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Time left to process a push before the system may stop the process.
+ *
+ * It travels with the coroutine processing the push like [PushTrace]. The stages run with [withinDeadline]
+ * are cancelled once the deadline, minus the time kept to build and post the notification, is reached,
+ * and the notification is posted with the data that could be fetched.
+ */
+class PushDeadline(budgetMs: Long = DEFAULT_BUDGET_MS) : AbstractCoroutineContextElement(PushDeadline) {
+    private val deadline = System.nanoTime() + budgetMs * 1_000_000
+
+    @Volatile
+    var expired = false
+        private set
+
+    companion object Key : CoroutineContext.Key<PushDeadline> {
+        // High priority messages get about 10 seconds before the process can be stopped
+        const val DEFAULT_BUDGET_MS = 9_000L
+        // Kept to build and post the notification once the data stages are done
+        const val NOTIFICATION_RESERVE_MS = 1_500L
+
+        // Reported with the push notification stats, by stage
+        private val hits = ConcurrentHashMap<String, AtomicInteger>()
+
+        internal fun recordHit(stage: String, serverUrl: String?) {
+            val count = hits.computeIfAbsent(stage) { name ->
+                AtomicInteger(0).also { hit -> PushTracer.registerCounter("deadline_hits_$name") { hit.get().toLong() } }
+            }.incrementAndGet()
+            TurboLog.i("ReactNative", "Push notification stage $stage reached its deadline for server=$serverUrl count=$count")
+        }
+    }
+
+    fun remainingMs(): Long {
+        return (deadline - System.nanoTime()) / 1_000_000
+    }
+
+    /**
+     * Time left for the data stages, the notification reserve excluded
+     */
+    fun stageBudgetMs(): Long {
+        return remainingMs() - NOTIFICATION_RESERVE_MS
+    }
+
+    internal fun markExpired(stage: String, serverUrl: String?) {
+        expired = true
+        recordHit(stage, serverUrl)
+    }
+}
+
+/**
+ * Runs [block] within the time left for the data stages of the current push and returns null when it
+ * could not complete in time, after calling [onExpired]. Without a deadline in the context it simply runs [block].
+ */
+internal suspend fun <T> withinDeadline(stage: String, serverUrl: String?, onExpired: (() -> Unit)? = null, block: suspend () -> T): T? {
+    val deadline = coroutineContext[PushDeadline] ?: return block()
+    val budget = deadline.stageBudgetMs()
+    if (budget <= 0) {
+        deadline.markExpired(stage, serverUrl)
+        onExpired?.invoke()
+        return null
+    }
+
+    // Wrapped so a stage completing with null is not mistaken for a timeout
+    val completed = withTimeoutOrNull(budget) { Completed(block()) }
+    if (completed == null) {
+        deadline.markExpired(stage, serverUrl)
+        onExpired?.invoke()
+        return null
+    }
+    return completed.value
+}
+
+private class Completed<T>(val value: T)
@@ -0,0 +1,113 @@
+package com.mattermost.helpers
+
+import android.content.Context
+import android.os.Bundle
+import com.mattermost.rnutils.helpers.PushTracer
+import com.mattermost.turbolog.TurboLog
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.delay
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Merges the message pushes received in a burst for the same channel (or thread when CRT is enabled)
+ * into a single posts delta fetch and a single database transaction.
+ *
+ * The first push of a burst opens a batch and every push for the same group joins it until the batch
+ * gets the server lock. A push processed alone goes straight to the lock, the batch only waits [windowMs]
+ * milliseconds for the next pushes when another push for the same group is already in flight. All the pushes
+ * of the batch then receive a copy of the same notification data to build their own notification, unless the
+ * push that opened it failed or was cancelled, in which case each of them processes its own data.
+ */
+object PushNotificationCoalescer {
+    private const val DEFAULT_WINDOW_MS = 100L
+
+    @Volatile
+    var windowMs = DEFAULT_WINDOW_MS
+
+    private val savedFetches = AtomicLong(0)
+    private val savedTransactions = AtomicLong(0)
+
+    init {
+        PushTracer.registerCounter("coalescer_saved_fetches") { savedFetches.get() }
+        PushTracer.registerCounter("coalescer_saved_transactions") { savedTransactions.get() }
+    }
+
+    private class Outcome(val data: Bundle?, val abandoned: Boolean = false)
+
+    private class Batch {
+        val result = CompletableDeferred<Outcome>()
+    }
+
+    private val batches = HashMap<String, Batch>()
+    private val inFlight = HashMap<String, Int>()
+
+    suspend fun fetchAndStore(context: Context, initialData: Bundle, isReactInit: Boolean): Bundle? {
+        val key = getBatchKey(initialData, isReactInit) ?: return PushNotificationDataRunnable.start(context, initialData, isReactInit)
+
+        var joined = false
+        var busy = false
+        val batch = synchronized(batches) {
+            batches[key]?.also { joined = true } ?: Batch().also {
+                batches[key] = it
+                busy = (inFlight[key] ?: 0) > 0
+                inFlight[key] = (inFlight[key] ?: 0) + 1
+            }
+        }
+
+        if (joined) {
+            val outcome = batch.result.await()
+            if (outcome.abandoned) {
+                TurboLog.i("ReactNative", "Coalesced push notification batch for $key was abandoned, processing it alone")
+                return fetchAndStore(context, initialData, isReactInit)
+            }
+
+            val fetches = savedFetches.incrementAndGet()
+            val transactions = if (isReactInit) savedTransactions.get() else savedTransactions.incrementAndGet()
+            TurboLog.i("ReactNative", "Coalesced push notification for $key saved fetches=$fetches transactions=$transactions")
+            return outcome.data?.let { Bundle(it) }
+        }
+
+        try {
+            if (busy) {
+                // Another push for the group holds or waits for the server lock, gather the ones coming meanwhile
+                delay(windowMs)
+            }
+            val result = PushNotificationDataRunnable.start(context, initialData, isReactInit) {
+                closeBatch(key, batch)
+            }
+            batch.result.complete(Outcome(result))
+            return result?.let { Bundle(it) }
+        } finally {
+            closeBatch(key, batch)
+            synchronized(batches) {
+                val count = (inFlight[key] ?: 1) - 1
+                if (count > 0) inFlight[key] = count else inFlight.remove(key)
+            }
+            // Completes only when the push failed or was cancelled, the pushes that joined then process their own data
+            batch.result.complete(Outcome(null, abandoned = true))
+        }
+    }
+
+    private fun closeBatch(key: String, batch: Batch) {
+        synchronized(batches) {
+            if (batches[key] === batch) {
+                batches.remove(key)
+            }
+        }
+    }
+
+    private fun getBatchKey(initialData: Bundle, isReactInit: Boolean): String? {
+        val serverUrl = initialData.getString("server_url")
+        val channelId = initialData.getString("channel_id")
+        val rootId = initialData.getString("root_id")
+        val isCRTEnabled = initialData.getString("is_crt_enabled") == "true"
+
+        if (serverUrl.isNullOrEmpty() || channelId.isNullOrEmpty() || initialData.getString("post_id") == null) {
+            return null
+        }
+
+        // The data of a push is stored natively only when React is not initialized, so it is part of the key
+        val groupId = if (isCRTEnabled && !rootId.isNullOrEmpty()) rootId else channelId
+        return "$serverUrl-$groupId-$isReactInit"
+    }
+}
@@ -6,7 +6,9 @@ import com.facebook.react.bridge.Arguments
 import com.facebook.react.bridge.ReadableArray
 import com.facebook.react.bridge.ReadableMap
 import com.mattermost.helpers.database_extension.getDatabaseForServer
+import com.mattermost.helpers.database_extension.releaseDatabase
 import com.mattermost.helpers.database_extension.saveToDatabase
+import com.mattermost.helpers.push_notification.PostsResult
 import com.mattermost.helpers.push_notification.addToDefaultCategoryIfNeeded
 import com.mattermost.helpers.push_notification.fetchMyChannel
 import com.mattermost.helpers.push_notification.fetchMyTeamCategories
@@ -16,14 +18,16 @@ import com.mattermost.helpers.push_notification.fetchTeamIfNeeded
 import com.mattermost.helpers.push_notification.fetchThread
 import com.mattermost.turbolog.TurboLog
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.sync.Mutex
-import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.withContext
+import java.io.IOException
+import kotlin.coroutines.coroutineContext
 
 class PushNotificationDataHelper(private val context: Context) {
     suspend fun fetchAndStoreDataForPushNotification(initialData: Bundle, isReactInit: Boolean): Bundle? {
         return withContext(Dispatchers.Default) {
-            PushNotificationDataRunnable.start(context, initialData, isReactInit)
+            PushNotificationCoalescer.fetchAndStore(context, initialData, isReactInit)
         }
     }
 }
@@ -31,13 +35,24 @@ class PushNotificationDataHelper(private val context: Context) {
 class PushNotificationDataRunnable {
     companion object {
         internal val specialMentions = listOf("all", "here", "channel")
+        // The database transaction cannot be interrupted, it is only started with at least this much time left
+        private const val SAVE_BUDGET_MS = 1_000L
         private val dbHelper = DatabaseHelper.instance!!
-        private val mutex = Mutex()
-
-        suspend fun start(context: Context, initialData: Bundle, isReactInit: Boolean): Bundle? {
-            mutex.withLock {
+        // Pushes are serialized per server database, pushes for different servers are processed in parallel
+        private val serverLocks = KeyedMutex()
+
+        /**
+         * Fetches and stores the data of the push. The errors are only logged unless [throwOnError] is set, in which
+         * case they are thrown, along with the failure to fetch the posts, before anything is stored.
+         */
+        suspend fun start(
+                context: Context, initialData: Bundle, isReactInit: Boolean,
+                throwOnError: Boolean = false, onLocked: (() -> Unit)? = null
+        ): Bundle? {
+            val serverUrl: String = initialData.getString("server_url") ?: return null
+            return serverLocks.withLock(serverUrl) {
+                onLocked?.invoke()
                 // for more info see: https://blog.danlew.net/2020/01/28/coroutines-and-java-synchronization-dont-mix/
-                val serverUrl: String = initialData.getString("server_url") ?: return null
                 val db = dbHelper.getDatabaseForServer(context, serverUrl)
                 var result: Bundle? = null
 
@@ -54,61 +69,100 @@ class PushNotificationDataRunnable {
 
                         val receivingThreads = isCRTEnabled && !rootId.isNullOrEmpty()
                         val notificationData = Arguments.createMap()
+                        var postData: PostsResult? = null
+
+                        // Fan out every request that does not depend on another one and only join
+                        // where the data is needed, so the total time is bound by the longest chain
+                        // (channel -> users) instead of the sum of all round trips
+                        coroutineScope {
+                            val teamDeferred = if (!teamId.isNullOrEmpty()) {
+                                async { traced("fetch_team") { withinDeadline("fetch_team", serverUrl) { fetchTeamIfNeeded(db, serverUrl, teamId) } } }
+                            } else {
+                                null
+                            }
 
-                        var channel: ReadableMap? = null
-                        var myTeam: ReadableMap? = null
-
-                        if (!teamId.isNullOrEmpty()) {
-                            val res = fetchTeamIfNeeded(db, serverUrl, teamId)
-                            res.first?.let { notificationData.putMap("team", it) }
+                            if (channelId != null && postId != null) {
+                                val channelDeferred = async {
+                                    traced("fetch_channel") { withinDeadline("fetch_channel", serverUrl) { fetchMyChannel(db, serverUrl, channelId, isCRTEnabled) } }
+                                }
+                                val postsDeferred = async {
+                                    traced("fetch_posts") { withinDeadline("fetch_posts", serverUrl) { fetchPosts(db, serverUrl, channelId, isCRTEnabled, rootId, isReactInit) } }
+                                }
+                                val threadDeferred = if (isCRTEnabled && !rootId.isNullOrEmpty()) {
+                                    async { traced("fetch_thread") { withinDeadline("fetch_thread", serverUrl) { fetchThread(db, serverUrl, rootId, teamId) } } }
+                                } else {
+                                    null
+                                }
+                                val categoriesDeferred = async {
+                                    val myTeam = teamDeferred?.await()?.second
+                                    if (!teamId.isNullOrEmpty() && myTeam != null) {
+                                        // should load all categories
+                                        Pair(traced("fetch_categories") { withinDeadline("fetch_categories", serverUrl) { fetchMyTeamCategories(db, serverUrl, teamId) } }, null)
+                                    } else {
+                                        // check if the channel is in the category for the team
+                                        val channel = channelDeferred.await()?.first
+                                        Pair(null, channel?.let { addToDefaultCategoryIfNeeded(db, it) })
+                                    }
+                                }
+                                val usersDeferred = async {
+                                    val loadedUsers = channelDeferred.await()?.third
+                                    val posts = postsDeferred.await()
+                                    traced("fetch_users") { withinDeadline("fetch_users", serverUrl) { fetchNeededUsers(serverUrl, loadedUsers, posts) } }
+                                }
 
-                            myTeam = res.second
-                            myTeam?.let { notificationData.putMap("myTeam", it) }
-                        }
+                                channelDeferred.await()?.let { channelRes ->
+                                    channelRes.first?.let { notificationData.putMap("channel", it) }
+                                    channelRes.second?.let { notificationData.putMap("myChannel", it) }
+                                }
 
-                        if (channelId != null && postId != null) {
-                            val channelRes = fetchMyChannel(db, serverUrl, channelId, isCRTEnabled)
-
-                            channel = channelRes.first
-                            channel?.let { notificationData.putMap("channel", it) }
-                            channelRes.second?.let { notificationData.putMap("myChannel", it) }
-                            val loadedProfiles = channelRes.third
-
-                            // Fetch categories if needed
-                            if (!teamId.isNullOrEmpty() && myTeam != null) {
-                                // should load all categories
-                                val res = fetchMyTeamCategories(db, serverUrl, teamId)
-                                res?.let { notificationData.putMap("categories", it) }
-                            } else if (channel != null) {
-                                // check if the channel is in the category for the team
-                                val res = addToDefaultCategoryIfNeeded(db, channel)
-                                res?.let { notificationData.putArray("categoryChannels", it) }
-                            }
+                                val categoriesRes = categoriesDeferred.await()
+                                categoriesRes.first?.let { notificationData.putMap("categories", it) }
+                                categoriesRes.second?.let { notificationData.putArray("categoryChannels", it) }
 
-                            val postData = fetchPosts(db, serverUrl, channelId, isCRTEnabled, rootId, loadedProfiles)
-                            postData?.getMap("posts")?.let { notificationData.putMap("posts", it) }
+                                postData = postsDeferred.await()
+                                if (postData == null && throwOnError) {
+                                    throw IOException("Could not fetch the posts of channel=$channelId")
+                                }
+                                if (isReactInit) {
+                                    // The posts are only handed over as maps when JS stores them
+                                    postData?.postList?.let { notificationData.putMap("posts", it.toReadableMap()) }
+                                }
 
-                            var notificationThread: ReadableMap? = null
-                            if (isCRTEnabled && !rootId.isNullOrEmpty()) {
-                                notificationThread = fetchThread(db, serverUrl, rootId, teamId)
-                            }
+                                getThreadList(threadDeferred?.await(), postData?.threads)?.let {
+                                    val threadsArray = Arguments.createArray()
+                                    for (item in it) {
+                                        threadsArray.pushMap(item)
+                                    }
+                                    notificationData.putArray("threads", threadsArray)
+                                }
 
-                            getThreadList(notificationThread, postData?.getArray("threads"))?.let {
-                                val threadsArray = Arguments.createArray()
-                                for (item in it) {
-                                    threadsArray.pushMap(item)
+                                usersDeferred.await()?.let { userList ->
+                                    notificationData.putArray("users", ReadableArrayUtils.toWritableArray(userList.toArray()))
                                 }
-                                notificationData.putArray("threads", threadsArray)
                             }
 
-                            val userList = fetchNeededUsers(serverUrl, loadedProfiles, postData)
-                            notificationData.putArray("users", ReadableArrayUtils.toWritableArray(userList.toArray()))
+                            teamDeferred?.await()?.let { res ->
+                                res.first?.let { notificationData.putMap("team", it) }
+                                res.second?.let { notificationData.putMap("myTeam", it) }
+                            }
                         }
 
                         result = Arguments.toBundle(notificationData)
 
                         if (!isReactInit) {
-                            dbHelper.saveToDatabase(db, notificationData, teamId, channelId, receivingThreads)
+                            val deadline = coroutineContext[PushDeadline]
+                            if (deadline != null && (deadline.expired || deadline.stageBudgetMs() < SAVE_BUDGET_MS)) {
+                                // Storing partial data would leave gaps the app does not know about, the whole
+                                // push is processed again in the background and stored once complete
+                                if (!deadline.expired) {
+                                    deadline.markExpired("save_database", serverUrl)
+                                }
+                                PushPersistenceWorker.enqueue(context, initialData)
+                            } else {
+                                traced("save_database") {
+                                    dbHelper.saveToDatabase(db, notificationData, postData?.postList, teamId, channelId, receivingThreads)
+                                }
+                            }
                         }
 
                         TurboLog.i("ReactNative", "Done processing push notification=$serverUrl for channel=$channelId and ack=$ackId")
@@ -117,12 +171,15 @@ class PushNotificationDataRunnable {
                     e.printStackTrace()
                     val eMessage = e.message ?: "Error with no message"
                     TurboLog.e("ReactNative", "Error processing push notification error=$eMessage")
+                    if (throwOnError) {
+                        throw e
+                    }
                 } finally {
-                    db?.close()
+                    db?.let { dbHelper.releaseDatabase(it) }
                     TurboLog.i("ReactNative", "DONE fetching notification data")
                 }
 
-                return result
+                result
             }
         }
 
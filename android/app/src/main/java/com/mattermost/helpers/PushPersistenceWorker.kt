@@ -0,0 +1,76 @@
+package com.mattermost.helpers
+
+import android.content.Context
+import android.os.Bundle
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.Data
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.mattermost.turbolog.TurboLog
+import kotlinx.coroutines.CancellationException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Fetches and stores the data of a push whose processing reached its deadline before it could be stored.
+ *
+ * The notification was already posted with the data available at the time, this only makes sure the
+ * database gets everything the push referred to. The work is unique per channel (or thread), a push received
+ * while it runs for the same group appends a new run that fetches the posts since the last stored one.
+ * A run that could not fetch or store the data is retried with an exponential backoff.
+ */
+class PushPersistenceWorker(context: Context, params: WorkerParameters) : CoroutineWorker(context, params) {
+    companion object {
+        private const val MAX_ATTEMPTS = 5
+        private const val BACKOFF_DELAY_SECONDS = 30L
+        private val KEYS = arrayOf(
+            "server_url", "server_id", "team_id", "channel_id", "post_id", "root_id", "is_crt_enabled", "ack_id", "type"
+        )
+
+        fun enqueue(context: Context, initialData: Bundle) {
+            val serverUrl = initialData.getString("server_url") ?: return
+            val channelId = initialData.getString("channel_id") ?: return
+            val rootId = initialData.getString("root_id")
+            val isCRTEnabled = initialData.getString("is_crt_enabled") == "true"
+            val groupId = if (isCRTEnabled && !rootId.isNullOrEmpty()) rootId else channelId
+
+            val input = Data.Builder()
+            for (key in KEYS) {
+                initialData.getString(key)?.let { input.putString(key, it) }
+            }
+
+            val request = OneTimeWorkRequestBuilder<PushPersistenceWorker>()
+                    .setInputData(input.build())
+                    .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                    .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_SECONDS, TimeUnit.SECONDS)
+                    .build()
+            WorkManager.getInstance(context)
+                    .enqueueUniqueWork("push-persistence-$serverUrl-$groupId", ExistingWorkPolicy.APPEND_OR_REPLACE, request)
+            TurboLog.i("ReactNative", "Deferred storing the push notification data for $serverUrl-$groupId")
+        }
+    }
+
+    override suspend fun doWork(): Result {
+        val initialData = Bundle()
+        for ((key, value) in inputData.keyValueMap) {
+            (value as? String)?.let { initialData.putString(key, it) }
+        }
+
+        DatabaseHelper.instance?.init(applicationContext)
+        Network.init(applicationContext)
+        return try {
+            PushNotificationDataRunnable.start(applicationContext, initialData, false, throwOnError = true)
+            Result.success()
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            val attempt = runAttemptCount + 1
+            TurboLog.e("ReactNative", "Deferred push notification data could not be stored attempt=$attempt error=${e.message}")
+            if (attempt < MAX_ATTEMPTS) Result.retry() else Result.failure()
+        }
+    }
+}
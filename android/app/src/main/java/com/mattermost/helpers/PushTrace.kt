@@ -0,0 +1,48 @@
+package com.mattermost.helpers
+
+import android.os.Bundle
+import com.mattermost.rnutils.helpers.PushTracer
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Tags shared by every span recorded while processing a push notification.
+ *
+ * It travels with the coroutine processing the push, so the stages deep in the pipeline
+ * can record their span with [traced] without having the tags passed down to them.
+ */
+class PushTrace(
+    val serverUrl: String?,
+    val pushType: String?,
+    val payloadSize: Int
+) : AbstractCoroutineContextElement(PushTrace) {
+    val startedAt = System.nanoTime()
+
+    companion object Key : CoroutineContext.Key<PushTrace> {
+        fun fromBundle(bundle: Bundle, serverUrl: String?, pushType: String?): PushTrace {
+            var size = 0
+            for (key in bundle.keySet()) {
+                @Suppress("DEPRECATION")
+                size += key.length + (bundle.get(key)?.toString()?.length ?: 0)
+            }
+            return PushTrace(serverUrl, pushType, size)
+        }
+    }
+
+    inline fun <T> span(stage: String, block: () -> T): T {
+        return PushTracer.trace(stage, serverUrl, pushType, payloadSize, block)
+    }
+
+    fun finish(stage: String) {
+        PushTracer.record(stage, (System.nanoTime() - startedAt) / 1_000_000, serverUrl, pushType, payloadSize)
+    }
+}
+
+/**
+ * Records the duration of [block] under [stage] when the current push is being traced
+ */
+internal suspend inline fun <T> traced(stage: String, block: () -> T): T {
+    val trace = coroutineContext[PushTrace] ?: return block()
+    return trace.span(stage, block)
+}
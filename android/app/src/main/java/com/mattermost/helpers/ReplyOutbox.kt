@@ -0,0 +1,147 @@
+package com.mattermost.helpers
+
+import android.content.ContentValues
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteOpenHelper
+import android.os.Bundle
+import org.json.JSONObject
+
+/**
+ * Replies written from a notification that still have to be sent, kept on disk until the server accepts them.
+ *
+ * [ReplyOutboxWorker] sends the replies of a server in the order they were written. Each reply has its own
+ * pending post id, the server only recognizes it when it is sent again within a few seconds though, so a reply
+ * sent again after a lost response and a backoff can still be posted twice. The replies refused because the
+ * session expired are kept until a token is stored for their server again, or until the server is removed or
+ * logged out.
+ */
+object ReplyOutbox {
+    private const val DATABASE_NAME = "reply_outbox.db"
+    private const val DATABASE_VERSION = 1
+    private const val TABLE = "Reply"
+
+    class Reply(
+        val id: Long,
+        val serverUrl: String,
+        val notificationId: Int,
+        val channelId: String?,
+        val rootId: String?,
+        val message: String,
+        val pendingPostId: String,
+        val notification: Bundle,
+    )
+
+    private var helper: Helper? = null
+
+    private class Helper(context: Context) : SQLiteOpenHelper(context, DATABASE_NAME, null, DATABASE_VERSION) {
+        override fun onCreate(db: SQLiteDatabase) {
+            db.execSQL(
+                "CREATE TABLE $TABLE (id INTEGER PRIMARY KEY AUTOINCREMENT, server_url TEXT NOT NULL, notification_id INTEGER NOT NULL, " +
+                        "channel_id TEXT, root_id TEXT, message TEXT NOT NULL, pending_post_id TEXT NOT NULL, notification TEXT NOT NULL)"
+            )
+            db.execSQL("CREATE INDEX Reply_server_url ON $TABLE (server_url)")
+        }
+
+        override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {}
+    }
+
+    @Synchronized
+    private fun database(context: Context): SQLiteDatabase {
+        val helper = helper ?: Helper(context.applicationContext).also { helper = it }
+        return helper.writableDatabase
+    }
+
+    /**
+     * Stores the reply and schedules the delivery of the replies of its server
+     */
+    fun enqueue(context: Context, serverUrl: String, notificationId: Int, message: String, notification: Bundle) {
+        val postId = notification.getString("post_id")
+        val rootId = notification.getString("root_id").takeUnless { it.isNullOrEmpty() } ?: postId
+
+        val values = ContentValues()
+        values.put("server_url", serverUrl)
+        values.put("notification_id", notificationId)
+        values.put("channel_id", notification.getString("channel_id"))
+        values.put("root_id", rootId)
+        values.put("message", message)
+        values.put("pending_post_id", RandomId.generate())
+        values.put("notification", toJson(notification))
+        database(context).insert(TABLE, null, values)
+
+        ReplyOutboxWorker.enqueue(context, serverUrl)
+    }
+
+    fun pending(context: Context, serverUrl: String): List<Reply> {
+        val replies = ArrayList<Reply>()
+        database(context).rawQuery(
+            "SELECT id, notification_id, channel_id, root_id, message, pending_post_id, notification FROM $TABLE WHERE server_url=? ORDER BY id",
+            arrayOf(serverUrl)
+        ).use { cursor ->
+            while (cursor.moveToNext()) {
+                replies.add(
+                    Reply(
+                        cursor.getLong(0),
+                        serverUrl,
+                        cursor.getInt(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getString(5),
+                        fromJson(cursor.getString(6)),
+                    )
+                )
+            }
+        }
+        return replies
+    }
+
+    /**
+     * Schedules the delivery of the replies of the server if it has any, once its credentials are back
+     */
+    fun resume(context: Context, serverUrl: String) {
+        val hasReplies = database(context).rawQuery("SELECT 1 FROM $TABLE WHERE server_url=? LIMIT 1", arrayOf(serverUrl)).use {
+            it.moveToFirst()
+        }
+        if (hasReplies) {
+            ReplyOutboxWorker.enqueue(context, serverUrl)
+        }
+    }
+
+    /**
+     * Drops the replies of a server that was removed or logged out, they can no longer be sent
+     */
+    fun purge(context: Context, serverUrl: String) {
+        ReplyOutboxWorker.cancel(context, serverUrl)
+        database(context).delete(TABLE, "server_url=?", arrayOf(serverUrl))
+    }
+
+    fun remove(context: Context, id: Long) {
+        database(context).delete(TABLE, "id=?", arrayOf(id.toString()))
+    }
+
+    /**
+     * The notification is rebuilt from the string values of its payload only, the data fetched for it is not needed
+     */
+    @Suppress("DEPRECATION")
+    private fun toJson(notification: Bundle): String {
+        val json = JSONObject()
+        for (key in notification.keySet()) {
+            (notification.get(key) as? String)?.let { json.put(key, it) }
+        }
+        return json.toString()
+    }
+
+    private fun fromJson(value: String): Bundle {
+        val bundle = Bundle()
+        try {
+            val json = JSONObject(value)
+            for (key in json.keys()) {
+                bundle.putString(key, json.optString(key))
+            }
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+        return bundle
+    }
+}
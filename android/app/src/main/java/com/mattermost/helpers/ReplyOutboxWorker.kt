@@ -0,0 +1,147 @@
+package com.mattermost.helpers
+
+import android.app.Notification
+import android.content.Context
+import android.os.Bundle
+import androidx.core.app.NotificationCompat
+import androidx.core.app.Person
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import com.facebook.react.bridge.Arguments
+import com.mattermost.rnutils.helpers.NotificationDispatcher
+import com.mattermost.turbolog.TurboLog
+import com.wix.reactnativenotifications.core.NotificationIntentAdapter
+import com.wix.reactnativenotifications.core.notification.PushNotificationProps
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runInterruptible
+import java.util.concurrent.TimeUnit
+
+/**
+ * Sends the replies of the [ReplyOutbox] for a server.
+ *
+ * The work is unique per server: the replies written while a run is scheduled are sent by the same run, with the
+ * same client, and a reply written while it sends appends a new run. A run stops at the first reply that could not
+ * be sent because of the network or the server and is retried with an exponential backoff, once out of attempts
+ * that reply fails and the following ones are sent by a new run. The replies the server refused are dropped. A run refused because the session is no longer valid keeps the replies, they are sent when
+ * a token is stored for the server again. The notification replied to shows the reply once sent, or that it failed.
+ */
+class ReplyOutboxWorker(context: Context, params: WorkerParameters) : CoroutineWorker(context, params) {
+    companion object {
+        private const val MAX_ATTEMPTS = 6
+        private const val BACKOFF_DELAY_SECONDS = 10L
+        private const val POSTS_ENDPOINT = "/api/v4/posts?set_online=false"
+        const val FAILED_MESSAGE = "Message failed to send."
+
+        fun enqueue(context: Context, serverUrl: String) {
+            val request = OneTimeWorkRequestBuilder<ReplyOutboxWorker>()
+                    .setInputData(workDataOf("server_url" to serverUrl))
+                    .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                    .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_SECONDS, TimeUnit.SECONDS)
+                    .build()
+            WorkManager.getInstance(context)
+                    .enqueueUniqueWork("reply-outbox-$serverUrl", ExistingWorkPolicy.APPEND_OR_REPLACE, request)
+        }
+
+        fun cancel(context: Context, serverUrl: String) {
+            WorkManager.getInstance(context).cancelUniqueWork("reply-outbox-$serverUrl")
+        }
+
+        /**
+         * Shows [message] as the last message of the notification replied to, without alerting again
+         */
+        fun updateNotification(context: Context, notificationId: Int, bundle: Bundle, message: CharSequence) {
+            val pendingIntent = NotificationIntentAdapter.createPendingNotificationIntent(context, PushNotificationProps(bundle))
+            val builder = CustomPushNotificationHelper.createNotificationBuilder(context, pendingIntent, bundle, false)
+            val messagingStyle = NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(builder.build()) ?: return
+            messagingStyle.addMessage(message, System.currentTimeMillis(), null as Person?)
+            val notification: Notification = builder.setStyle(messagingStyle).setOnlyAlertOnce(true).build()
+            NotificationDispatcher.post(context, NotificationDispatcher.groupKey(bundle), bundle, listOf(Pair(notificationId, notification)))
+        }
+    }
+
+    private enum class Outcome { SENT, REFUSED, UNAUTHORIZED, RETRY }
+
+    override suspend fun doWork(): Result {
+        val serverUrl = inputData.getString("server_url") ?: return Result.failure()
+        val replies = ReplyOutbox.pending(applicationContext, serverUrl)
+        if (replies.isEmpty()) {
+            return Result.success()
+        }
+
+        Network.init(applicationContext)
+        for (reply in replies) {
+            when (send(reply)) {
+                Outcome.SENT -> {
+                    ReplyOutbox.remove(applicationContext, reply.id)
+                    updateNotification(applicationContext, reply.notificationId, reply.notification, reply.message)
+                    TurboLog.i("ReactNative", "Reply SUCCESS")
+                }
+                Outcome.REFUSED -> {
+                    ReplyOutbox.remove(applicationContext, reply.id)
+                    updateNotification(applicationContext, reply.notificationId, reply.notification, FAILED_MESSAGE)
+                }
+                Outcome.UNAUTHORIZED -> {
+                    // Kept along with the following ones, ReplyOutbox.resume schedules them again with the new token
+                    TurboLog.i("ReactNative", "Reply postponed until the credentials of the server are back")
+                    return Result.success()
+                }
+                Outcome.RETRY -> {
+                    if (runAttemptCount + 1 < MAX_ATTEMPTS) {
+                        return Result.retry()
+                    }
+                    ReplyOutbox.remove(applicationContext, reply.id)
+                    updateNotification(applicationContext, reply.notificationId, reply.notification, FAILED_MESSAGE)
+                    // The attempts were spent on this reply, the following ones get their own in a new run
+                    if (reply !== replies.last()) {
+                        enqueue(applicationContext, serverUrl)
+                    }
+                    return Result.success()
+                }
+            }
+        }
+        return Result.success()
+    }
+
+    private suspend fun send(reply: ReplyOutbox.Reply): Outcome {
+        val headers = Arguments.createMap()
+        headers.putString("Content-Type", "application/json")
+
+        val body = Arguments.createMap()
+        body.putString("channel_id", reply.channelId)
+        body.putString("message", reply.message)
+        body.putString("root_id", reply.rootId)
+        body.putString("pending_post_id", reply.pendingPostId)
+
+        val options = Arguments.createMap()
+        options.putMap("headers", headers)
+        options.putMap("body", body)
+
+        return try {
+            val code = runInterruptible(Dispatchers.IO) {
+                Network.postSync(reply.serverUrl, POSTS_ENDPOINT, options).use { it.code }
+            }
+            when {
+                code in 200..299 -> Outcome.SENT
+                code == 401 -> Outcome.UNAUTHORIZED
+                code == 429 || code >= 500 -> {
+                    TurboLog.i("ReactNative", "Reply postponed status $code")
+                    Outcome.RETRY
+                }
+                else -> {
+                    TurboLog.i("ReactNative", "Reply FAILED status $code")
+                    Outcome.REFUSED
+                }
+            }
+        } catch (e: Exception) {
+            TurboLog.i("ReactNative", "Reply postponed exception ${e.message}")
+            Outcome.RETRY
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.mattermost.helpers
+
+import com.nozbe.watermelondb.WMDatabase
+
+/**
+ * In-memory copy of the Servers table and the device token stored in the app database,
+ * so resolving a push to its server does not need to query app.db every time.
+ *
+ * The copy is loaded lazily and reloaded by [invalidate] when a server is not found in it. The servers loaded since
+ * the last [refresh] are also kept as first seen, so a server removed in between is still reported by [refresh]
+ * even if the copy was reloaded without it.
+ */
+class ServerRegistry {
+    class Server(
+        val url: String,
+        val identifier: String,
+        val databasePath: String,
+        val lastActiveAt: Double
+    )
+
+    private class Snapshot(val servers: List<Server>, val deviceToken: String?)
+
+    private var snapshot: Snapshot? = null
+    private val seen = LinkedHashMap<String, Server>()
+
+    @Synchronized
+    fun servers(db: WMDatabase): List<Server> {
+        return load(db).servers
+    }
+
+    @Synchronized
+    fun deviceToken(db: WMDatabase): String? {
+        return load(db).deviceToken
+    }
+
+    /**
+     * Drops the cached copy, it is loaded again on the next lookup
+     */
+    @Synchronized
+    fun invalidate() {
+        snapshot = null
+    }
+
+    /**
+     * Reloads the copy, called when the app adds, updates or removes a server. Returns the servers seen since the
+     * last refresh, as first seen, and the current ones so the caller can compare them.
+     */
+    @Synchronized
+    fun refresh(db: WMDatabase): Pair<List<Server>, List<Server>> {
+        val previous = seen.values.toList()
+        snapshot = null
+        seen.clear()
+        return Pair(previous, load(db).servers)
+    }
+
+    private fun load(db: WMDatabase): Snapshot {
+        snapshot?.let { return it }
+
+        val servers = ArrayList<Server>()
+        db.rawQuery("SELECT url, identifier, db_path, last_active_at FROM Servers").use { cursor ->
+            while (cursor.moveToNext()) {
+                servers.add(
+                        Server(
+                                cursor.getString(0),
+                                cursor.getString(1) ?: "",
+                                String.format("file://%s", cursor.getString(2)),
+                                cursor.getDouble(3)
+                        )
+                )
+            }
+        }
+
+        var deviceToken: String? = null
+        db.rawQuery("SELECT value FROM Global WHERE id=?", arrayOf("deviceToken")).use { cursor ->
+            if (cursor.count == 1) {
+                cursor.moveToFirst()
+                deviceToken = cursor.getString(0)
+            }
+        }
+
+        servers.forEach { seen.putIfAbsent(it.url, it) }
+        return Snapshot(servers, deviceToken).also { snapshot = it }
+    }
+}
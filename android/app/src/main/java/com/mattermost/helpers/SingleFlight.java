@@ -0,0 +1,269 @@
+package com.mattermost.helpers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * SingleFlight: Shares one request between the callers asking for the same resource at the same time.
+ *
+ * Callers join the request in flight for their key instead of starting a new one, and all of them
+ * get the result once it completes. The key is expected to identify the server, the endpoint and the
+ * credentials of the request. When the caller running the request is interrupted or cancelled, the callers
+ * waiting on it run the request again instead of failing with it.
+ */
+public class SingleFlight {
+    private final Map<String, List<Promise>> pendingPromises = new HashMap<>();
+    private final Map<String, CompletableFuture<BufferedResponse>> pendingResponses = new HashMap<>();
+    private final AtomicLong executed = new AtomicLong(0);
+    private final AtomicLong deduplicated = new AtomicLong(0);
+
+    public interface AsyncCall {
+        void execute(Promise promise);
+    }
+
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    public long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    public void get(String key, Promise promise, AsyncCall call) {
+        synchronized (pendingPromises) {
+            List<Promise> waiting = pendingPromises.get(key);
+            if (waiting != null) {
+                waiting.add(promise);
+                deduplicated.incrementAndGet();
+                return;
+            }
+
+            waiting = new ArrayList<>();
+            waiting.add(promise);
+            pendingPromises.put(key, waiting);
+        }
+
+        executed.incrementAndGet();
+        call.execute(new FanOutPromise(key));
+    }
+
+    public Response getSync(String key, Callable<Response> call) {
+        CompletableFuture<BufferedResponse> future;
+        boolean leader = false;
+        synchronized (pendingResponses) {
+            future = pendingResponses.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pendingResponses.put(key, future);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            executed.incrementAndGet();
+            try {
+                BufferedResponse response = BufferedResponse.read(call.call());
+                complete(key, future, response, null);
+                return response.newResponse();
+            } catch (Throwable t) {
+                complete(key, future, null, isAbandoned(t) ? new AbandonedException(t) : t);
+                return rethrow(t);
+            }
+        }
+
+        deduplicated.incrementAndGet();
+        try {
+            return future.get().newResponse();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof AbandonedException) {
+                // Running it again either joins the request of another caller or runs it
+                return getSync(key, call);
+            }
+            return rethrow(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return rethrow(e);
+        }
+    }
+
+    private void complete(String key, CompletableFuture<BufferedResponse> future, @Nullable BufferedResponse response, @Nullable Throwable failure) {
+        // Removed first so the callers running the request again do not join the completed one
+        synchronized (pendingResponses) {
+            pendingResponses.remove(key);
+        }
+        if (failure != null) {
+            future.completeExceptionally(failure);
+        } else {
+            future.complete(response);
+        }
+    }
+
+    private static boolean isAbandoned(Throwable t) {
+        return t instanceof InterruptedException || t instanceof InterruptedIOException || t instanceof CancellationException;
+    }
+
+    /**
+     * The caller running the request was interrupted or cancelled, the outcome says nothing about the request itself
+     */
+    private static class AbandonedException extends Exception {
+        AbandonedException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Throws the failure of the shared request as is, so every caller sees the same exception as the one that ran it
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable, R> R rethrow(Throwable throwable) throws T {
+        throw (T) throwable;
+    }
+
+    private List<Promise> complete(String key) {
+        synchronized (pendingPromises) {
+            List<Promise> waiting = pendingPromises.remove(key);
+            return waiting != null ? waiting : new ArrayList<>();
+        }
+    }
+
+    /**
+     * Response with its body read in memory so it can be handed to every caller
+     */
+    private static class BufferedResponse {
+        private final Response response;
+        private final byte[] body;
+        private final MediaType contentType;
+
+        private BufferedResponse(Response response, byte[] body, MediaType contentType) {
+            this.response = response;
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        static BufferedResponse read(Response response) throws Exception {
+            try (ResponseBody body = response.body()) {
+                if (body == null) {
+                    return new BufferedResponse(response, null, null);
+                }
+                return new BufferedResponse(response, body.bytes(), body.contentType());
+            }
+        }
+
+        Response newResponse() {
+            if (body == null) {
+                return response.newBuilder().build();
+            }
+            return response.newBuilder().body(ResponseBody.create(body, contentType)).build();
+        }
+    }
+
+    private interface Settle {
+        void apply(Promise promise);
+    }
+
+    /**
+     * Settles the promises of every caller waiting on the key with the outcome of the shared request
+     */
+    private class FanOutPromise implements Promise {
+        private final String key;
+
+        FanOutPromise(String key) {
+            this.key = key;
+        }
+
+        private void settle(Settle settle) {
+            for (Promise promise : complete(key)) {
+                settle.apply(promise);
+            }
+        }
+
+        @Override
+        public void resolve(@Nullable Object o) {
+            List<Promise> waiting = complete(key);
+            Object[] values = new Object[waiting.size()];
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0 && o instanceof ReadableMap) {
+                    // Bridge maps can only be consumed once, every other caller gets its own copy made before
+                    // the original is handed over
+                    values[i] = Arguments.makeNativeMap(((ReadableMap) o).toHashMap());
+                } else {
+                    values[i] = o;
+                }
+            }
+            for (int i = values.length - 1; i >= 0; i--) {
+                waiting.get(i).resolve(values[i]);
+            }
+        }
+
+        @Override
+        public void reject(@NonNull String s) {
+            settle(promise -> promise.reject(s));
+        }
+
+        @Override
+        public void reject(@NonNull String s, @Nullable String s1) {
+            settle(promise -> promise.reject(s, s1));
+        }
+
+        @Override
+        public void reject(@NonNull String s, @Nullable Throwable throwable) {
+            settle(promise -> promise.reject(s, throwable));
+        }
+
+        @Override
+        public void reject(@NonNull String s, @Nullable String s1, @Nullable Throwable throwable) {
+            settle(promise -> promise.reject(s, s1, throwable));
+        }
+
+        @Override
+        public void reject(@NonNull Throwable throwable) {
+            settle(promise -> promise.reject(throwable));
+        }
+
+        @Override
+        public void reject(@NonNull Throwable throwable, @NonNull WritableMap writableMap) {
+            settle(promise -> promise.reject(throwable, writableMap));
+        }
+
+        @Override
+        public void reject(@NonNull String s, @NonNull WritableMap writableMap) {
+            settle(promise -> promise.reject(s, writableMap));
+        }
+
+        @Override
+        public void reject(@NonNull String s, @Nullable Throwable throwable, @NonNull WritableMap writableMap) {
+            settle(promise -> promise.reject(s, throwable, writableMap));
+        }
+
+        @Override
+        public void reject(@NonNull String s, @Nullable String s1, @NonNull WritableMap writableMap) {
+            settle(promise -> promise.reject(s, s1, writableMap));
+        }
+
+        @Override
+        public void reject(@Nullable String s, @Nullable String s1, @Nullable Throwable throwable, @Nullable WritableMap writableMap) {
+            settle(promise -> promise.reject(s, s1, throwable, writableMap));
+        }
+    }
+}
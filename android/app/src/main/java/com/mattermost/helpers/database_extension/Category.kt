@@ -36,14 +36,13 @@ fun insertCategoryChannels(db: WMDatabase, categoryId: String, teamId: String, c
         for (i in 0 until channelIds.size()) {
             val channelId = channelIds.getString(i)
             val id = "${teamId}_$channelId"
-            db.execute(
-                    """
-                    INSERT INTO CategoryChannel
-                    (id, category_id, channel_id, sort_order, _changed, _status)
-                    VALUES (?, ?, ?, ?, '', 'created')
-                    """.trimIndent(),
-                    arrayOf(id, categoryId, channelId, i)
-            )
+            db.withStatement(Statement.INSERT_CATEGORY_CHANNEL) {
+                bindString(1, id)
+                bindString(2, categoryId)
+                bindNullableString(3, channelId)
+                bindLong(4, i.toLong())
+                executeInsert()
+            }
         }
     } catch (e: Exception) {
         e.printStackTrace()
@@ -75,14 +74,13 @@ fun insertChannelToDefaultCategory(db: WMDatabase, categoryChannels: ReadableArr
                 val channelId = cc.getString("channel_id")
                 if (id != null && categoryId != null && channelId != null) {
                     val count = countByColumn(db, "CategoryChannel", "category_id", categoryId)
-                    db.execute(
-                            """
-                                INSERT INTO CategoryChannel
-                                (id, category_id, channel_id, sort_order, _changed, _status)
-                                VALUES (?, ?, ?, ?, '', 'created')
-                            """.trimIndent(),
-                            arrayOf(id, categoryId, channelId, if (count > 0) count + 1 else count)
-                    )
+                    db.withStatement(Statement.INSERT_CATEGORY_CHANNEL) {
+                        bindString(1, id)
+                        bindString(2, categoryId)
+                        bindString(3, channelId)
+                        bindLong(4, (if (count > 0) count + 1 else count).toLong())
+                        executeInsert()
+                    }
                 }
             }
         }
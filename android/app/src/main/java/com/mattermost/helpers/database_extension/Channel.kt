@@ -3,6 +3,7 @@ package com.mattermost.helpers.database_extension
 import com.facebook.react.bridge.ReadableMap
 import com.mattermost.helpers.DatabaseHelper
 import com.mattermost.helpers.ReadableMapUtils
+import com.mattermost.helpers.push_notification.PostList
 import com.nozbe.watermelondb.WMDatabase
 import org.json.JSONException
 import org.json.JSONObject
@@ -37,23 +38,13 @@ internal fun handleChannel(db: WMDatabase, channel: ReadableMap) {
     }
 }
 
-internal fun DatabaseHelper.handleMyChannel(db: WMDatabase, myChannel: ReadableMap, postsData: ReadableMap?, receivingThreads: Boolean) {
+internal fun DatabaseHelper.handleMyChannel(db: WMDatabase, myChannel: ReadableMap, postList: PostList?, receivingThreads: Boolean) {
     try {
         val json = ReadableMapUtils.toJSONObject(myChannel)
         val exists = myChannel.getString("id")?.let { findMyChannel(db, it) } ?: false
 
-        if (postsData != null && !receivingThreads) {
-            val posts = ReadableMapUtils.toJSONObject(postsData.getMap("posts")).toMap()
-            val postList = posts.toList()
-            val lastFetchedAt = postList.fold(0.0) { acc, next ->
-                val post = next.second as Map<*, *>
-                val createAt = post["create_at"] as Double
-                val updateAt = post["update_at"] as Double
-                val deleteAt = post["delete_at"] as Double
-                val value = maxOf(createAt, updateAt, deleteAt)
-
-                maxOf(value, acc)
-            }
+        if (postList != null && !receivingThreads) {
+            val lastFetchedAt = postList.posts.values.fold(0.0) { acc, post -> maxOf(post.lastChangedAt, acc) }
             json.put("last_fetched_at", lastFetchedAt)
         }
 
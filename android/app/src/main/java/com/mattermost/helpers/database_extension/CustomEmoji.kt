@@ -1,20 +1,18 @@
 package com.mattermost.helpers.database_extension
 
+import com.mattermost.helpers.push_notification.CustomEmoji
 import com.nozbe.watermelondb.WMDatabase
-import org.json.JSONArray
 
-internal fun insertCustomEmojis(db: WMDatabase, customEmojis: JSONArray) {
-    for (i in 0 until customEmojis.length()) {
+internal fun insertCustomEmojis(db: WMDatabase, customEmojis: Collection<CustomEmoji>) {
+    val existing = queryExistingIds(db, "CustomEmoji", customEmojis.map { it.id })
+    for (emoji in customEmojis) {
         try {
-            val emoji = customEmojis.getJSONObject(i)
-            if (find(db, "CustomEmoji", emoji.getString("id")) == null) {
-                db.execute(
-                        "INSERT INTO CustomEmoji (id, name, _changed, _status) VALUES (?, ?, '', 'created')",
-                        arrayOf(
-                                emoji.getString("id"),
-                                emoji.getString("name"),
-                        )
-                )
+            if (!existing.contains(emoji.id)) {
+                db.withStatement(Statement.INSERT_CUSTOM_EMOJI) {
+                    bindString(1, emoji.id)
+                    bindString(2, emoji.name)
+                    executeInsert()
+                }
             }
         } catch (e: Exception) {
             e.printStackTrace()
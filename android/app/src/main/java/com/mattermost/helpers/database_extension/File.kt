@@ -1,33 +1,23 @@
 package com.mattermost.helpers.database_extension
 
+import com.mattermost.helpers.push_notification.FileInfo
 import com.nozbe.watermelondb.WMDatabase
-import org.json.JSONArray
-import org.json.JSONException
 
-internal fun insertFiles(db: WMDatabase, files: JSONArray) {
+internal fun insertFiles(db: WMDatabase, files: List<FileInfo>) {
     try {
-        for (i in 0 until files.length()) {
-            val file = files.getJSONObject(i)
-            val id = file.getString("id")
-            val extension = file.getString("extension")
-            val miniPreview = try { file.getString("mini_preview") } catch (e: JSONException) { "" }
-            val height = try { file.getInt("height") } catch (e: JSONException) { 0 }
-            val mime = file.getString("mime_type")
-            val name = file.getString("name")
-            val postId = file.getString("post_id")
-            val size = try { file.getDouble("size") } catch (e: JSONException) { 0 }
-            val width = try { file.getInt("width") } catch (e: JSONException) { 0 }
-            db.execute(
-                    """
-                    INSERT INTO File 
-                    (id, extension, height, image_thumbnail, local_path, mime_type, name, post_id, size, width, _changed, _status) 
-                    VALUES (?, ?, ?, ?, '', ?, ?, ?, ?, ?, '', 'created')
-                    """.trimIndent(),
-                    arrayOf(
-                            id, extension, height, miniPreview,
-                            mime, name, postId, size, width
-                    )
-            )
+        for (file in files) {
+            db.withStatement(Statement.INSERT_FILE) {
+                bindString(1, file.id)
+                bindString(2, file.extension)
+                bindLong(3, file.height.toLong())
+                bindString(4, file.miniPreview)
+                bindString(5, file.mimeType)
+                bindString(6, file.name)
+                bindString(7, file.postId)
+                bindDouble(8, file.size)
+                bindLong(9, file.width.toLong())
+                executeInsert()
+            }
         }
     } catch (e: Exception) {
         e.printStackTrace()
@@ -1,19 +1,18 @@
 package com.mattermost.helpers.database_extension
 
 import android.content.Context
-import android.database.sqlite.SQLiteDatabase
 import android.text.TextUtils
 import com.facebook.react.bridge.Arguments
 import com.facebook.react.bridge.ReadableMap
 import com.mattermost.helpers.DatabaseHelper
 import com.mattermost.helpers.QueryArgs
 import com.mattermost.helpers.mapCursor
+import com.mattermost.helpers.push_notification.PostList
 import com.nozbe.watermelondb.WMDatabase
 import java.util.Arrays
 
-internal fun DatabaseHelper.saveToDatabase(db: WMDatabase, data: ReadableMap, teamId: String?, channelId: String?, receivingThreads: Boolean) {
+internal fun DatabaseHelper.saveToDatabase(db: WMDatabase, data: ReadableMap, posts: PostList?, teamId: String?, channelId: String?, receivingThreads: Boolean) {
     db.transaction {
-        val posts = data.getMap("posts")
         data.getMap("team")?.let { insertTeam(db, it) }
         data.getMap("myTeam")?.let { insertMyTeam(db, it) }
         data.getMap("channel")?.let { handleChannel(db, it) }
@@ -36,12 +35,9 @@ internal fun DatabaseHelper.saveToDatabase(db: WMDatabase, data: ReadableMap, te
 
 fun DatabaseHelper.getServerUrlForIdentifier(identifier: String): String? {
     try {
-        val query = "SELECT url FROM Servers WHERE identifier=?"
-        defaultDatabase!!.rawQuery(query, arrayOf(identifier)).use { cursor ->
-            if (cursor.count == 1) {
-                cursor.moveToFirst()
-                return cursor.getString(0)
-            }
+        val servers = findServers { it.identifier == identifier }
+        if (servers.size == 1) {
+            return servers[0].url
         }
     } catch (e: Exception) {
         e.printStackTrace()
@@ -52,14 +48,8 @@ fun DatabaseHelper.getServerUrlForIdentifier(identifier: String): String? {
 
 fun DatabaseHelper.getDatabaseForServer(context: Context?, serverUrl: String): WMDatabase? {
     try {
-        val query = "SELECT db_path FROM Servers WHERE url=?"
-        defaultDatabase!!.rawQuery(query, arrayOf(serverUrl)).use { cursor ->
-            if (cursor.count == 1) {
-                cursor.moveToFirst()
-                val databasePath = String.format("file://%s", cursor.getString(0))
-                return WMDatabase.buildDatabase(databasePath, context!!, SQLiteDatabase.CREATE_IF_NECESSARY)
-            }
-        }
+        val databasePath = queryDatabasePathForServer(serverUrl) ?: return null
+        return databasePool.acquire(context!!, databasePath)
     } catch (e: Exception) {
         e.printStackTrace()
         // let it fall to return null
@@ -67,18 +57,35 @@ fun DatabaseHelper.getDatabaseForServer(context: Context?, serverUrl: String): W
     return null
 }
 
-fun DatabaseHelper.getDeviceToken(): String? {
+/**
+ * Gives back a database obtained with [getDatabaseForServer], it stays open for the next push until it is idle
+ */
+fun DatabaseHelper.releaseDatabase(db: WMDatabase) {
+    databasePool.release(db)
+}
+
+fun DatabaseHelper.closeDatabaseForServer(serverUrl: String) {
+    queryDatabasePathForServer(serverUrl)?.let { databasePool.evict(it) }
+}
+
+private fun DatabaseHelper.queryDatabasePathForServer(serverUrl: String): String? {
     try {
-        val query = "SELECT value FROM Global WHERE id=?"
-        defaultDatabase!!.rawQuery(query, arrayOf("deviceToken")).use { cursor ->
-            if (cursor.count == 1) {
-                cursor.moveToFirst()
-                return cursor.getString(0)
-            }
+        val servers = findServers { it.url == serverUrl }
+        if (servers.size == 1) {
+            return servers[0].databasePath
         }
     } catch (e: Exception) {
         e.printStackTrace()
     }
+    return null
+}
+
+fun DatabaseHelper.getDeviceToken(): String? {
+    try {
+        return serverRegistry.deviceToken(defaultDatabase!!)
+    } catch (e: Exception) {
+        e.printStackTrace()
+    }
 
     return null
 }
@@ -145,6 +152,19 @@ fun queryIds(db: WMDatabase, tableName: String, ids: Array<String>): List<String
     return list
 }
 
+/**
+ * Same as [queryIds] for any number of ids, querying them in chunks that fit in SQLite's bound arguments limit
+ */
+internal fun queryExistingIds(db: WMDatabase, tableName: String, ids: Collection<String>): Set<String> {
+    val existing = HashSet<String>()
+    ids.chunked(MAX_QUERY_ARGS).forEach { chunk ->
+        existing.addAll(queryIds(db, tableName, chunk.toTypedArray()))
+    }
+    return existing
+}
+
+internal const val MAX_QUERY_ARGS = 500
+
 fun queryByColumn(db: WMDatabase, tableName: String, columnName: String, values: Array<Any?>): List<String> {
     val list: MutableList<String> = ArrayList()
     val args = TextUtils.join(",", Arrays.stream(values).map { "?" }.toArray())
@@ -1,12 +1,11 @@
 package com.mattermost.helpers.database_extension
 
-import com.facebook.react.bridge.ReadableMap
+import android.database.sqlite.SQLiteStatement
 import com.mattermost.helpers.DatabaseHelper
-import com.mattermost.helpers.ReadableMapUtils
+import com.mattermost.helpers.push_notification.CustomEmoji
+import com.mattermost.helpers.push_notification.Post
+import com.mattermost.helpers.push_notification.PostList
 import com.nozbe.watermelondb.WMDatabase
-import org.json.JSONArray
-import org.json.JSONException
-import org.json.JSONObject
 import kotlin.Exception
 
 internal fun queryLastPostCreateAt(db: WMDatabase?, channelId: String): Double? {
@@ -75,176 +74,134 @@ fun queryLastPostInThread(db: WMDatabase?, rootId: String): Double? {
     return null
 }
 
-internal fun insertPost(db: WMDatabase, post: JSONObject) {
+internal fun insertPost(db: WMDatabase, post: Post) {
     try {
-        val id = try { post.getString("id") } catch (e: JSONException) { return }
-        val channelId = try { post.getString("channel_id") } catch (e: JSONException) { return }
-        val userId = try { post.getString("user_id") } catch (e: JSONException) { return }
-        val createAt = try { post.getDouble("create_at") } catch (e: JSONException) { return }
-        val deleteAt = try { post.getDouble("delete_at") } catch (e: JSONException) { 0 }
-        val updateAt = try { post.getDouble("update_at") } catch (e: JSONException) { 0 }
-        val editAt = try { post.getDouble("edit_at") } catch (e: JSONException) { 0 }
-        val isPinned = try { post.getBoolean("is_pinned") } catch (e: JSONException) { false }
-        val message = try { post.getString("message") } catch (e: JSONException) { "" }
-        val messageSource = try { post.getString("message_source") } catch (e: JSONException) { "" }
-        val metadata = try { post.getJSONObject("metadata") } catch (e: JSONException) { JSONObject() }
-        val originalId = try { post.getString("original_id") } catch (e: JSONException) { "" }
-        val pendingId = try { post.getString("pending_post_id") } catch (e: JSONException) { "" }
-        val prevId = try { post.getString("prev_post_id") } catch (e: JSONException) { "" }
-        val rootId = try { post.getString("root_id") } catch (e: JSONException) { "" }
-        val type = try { post.getString("type") } catch (e: JSONException) { "" }
-        val props = try { post.getJSONObject("props").toString() } catch (e: JSONException) { "" }
-        val reactions = metadata.remove("reactions") as JSONArray?
-        val customEmojis = metadata.remove("emojis") as JSONArray?
-        val files = metadata.remove("files") as JSONArray?
-
-        db.execute(
-                """
-                INSERT INTO Post 
-                (id, channel_id, create_at, delete_at, update_at, edit_at, is_pinned, message, message_source, metadata, original_id, pending_post_id, 
-                previous_post_id, root_id, type, user_id, props, _changed, _status) 
-                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, '', 'created')
-                """.trimIndent(),
-                arrayOf(
-                        id, channelId, createAt, deleteAt, updateAt, editAt,
-                        isPinned, message, messageSource, metadata.toString(),
-                        originalId, pendingId, prevId, rootId,
-                        type, userId, props
-                )
-        )
+        if (post.channelId.isEmpty() || post.userId.isEmpty()) {
+            return
+        }
 
-        if (reactions != null && reactions.length() > 0) {
-            insertReactions(db, reactions)
+        db.withStatement(Statement.INSERT_POST) {
+            bindString(1, post.id)
+            bindString(2, post.channelId)
+            bindPostColumns(post, 3)
+            executeInsert()
         }
 
-        if (customEmojis != null && customEmojis.length() > 0) {
-            insertCustomEmojis(db, customEmojis)
+        if (post.reactions.isNotEmpty()) {
+            insertReactions(db, post.reactions)
         }
 
-        if (files != null && files.length() > 0) {
-            insertFiles(db, files)
+        if (post.files.isNotEmpty()) {
+            insertFiles(db, post.files)
         }
     } catch (e: Exception) {
         e.printStackTrace()
     }
 }
 
-internal fun updatePost(db: WMDatabase, post: JSONObject) {
+internal fun updatePost(db: WMDatabase, post: Post, existingReactions: Map<String, String>?) {
     try {
-        val id = try { post.getString("id") } catch (e: JSONException) { return }
-        val channelId = try { post.getString("channel_id") } catch (e: JSONException) { return }
-        val userId = try { post.getString("user_id") } catch (e: JSONException) { return }
-        val createAt = try { post.getDouble("create_at") } catch (e: JSONException) { return }
-        val deleteAt = try { post.getDouble("delete_at") } catch (e: JSONException) { 0 }
-        val updateAt = try { post.getDouble("update_at") } catch (e: JSONException) { 0 }
-        val editAt = try { post.getDouble("edit_at") } catch (e: JSONException) { 0 }
-        val isPinned = try { post.getBoolean("is_pinned") } catch (e: JSONException) { false }
-        val message = try { post.getString("message") } catch (e: JSONException) { "" }
-        val messageSource = try { post.getString("message_source") } catch (e: JSONException) { "" }
-        val metadata = try { post.getJSONObject("metadata") } catch (e: JSONException) { JSONObject() }
-        val originalId = try { post.getString("original_id") } catch (e: JSONException) { "" }
-        val pendingId = try { post.getString("pending_post_id") } catch (e: JSONException) { "" }
-        val prevId = try { post.getString("prev_post_id") } catch (e: JSONException) { "" }
-        val rootId = try { post.getString("root_id") } catch (e: JSONException) { "" }
-        val type = try { post.getString("type") } catch (e: JSONException) { "" }
-        val props = try { post.getJSONObject("props").toString() } catch (e: JSONException) { "" }
-        val reactions = metadata.remove("reactions") as JSONArray?
-        val customEmojis = metadata.remove("emojis") as JSONArray?
-
-        metadata.remove("files")
-
-        db.execute(
-                """
-                UPDATE Post SET channel_id = ?, create_at = ?, delete_at = ?, update_at =?, edit_at =?, 
-                is_pinned = ?, message = ?, message_source = ?, metadata = ?, original_id = ?, pending_post_id = ?, previous_post_id = ?, 
-                root_id = ?, type = ?, user_id = ?, props = ?, _status = 'updated' 
-                WHERE id = ?
-                """.trimIndent(),
-                arrayOf(
-                        channelId, createAt, deleteAt, updateAt, editAt,
-                        isPinned, message, messageSource, metadata.toString(),
-                        originalId, pendingId, prevId, rootId,
-                        type, userId, props,
-                        id,
-                )
-        )
+        if (post.channelId.isEmpty() || post.userId.isEmpty()) {
+            return
+        }
 
-        if (reactions != null && reactions.length() > 0) {
-            db.execute("DELETE FROM Reaction WHERE post_id = ?", arrayOf(post.getString("id")))
-            insertReactions(db, reactions)
+        db.withStatement(Statement.UPDATE_POST) {
+            bindString(1, post.channelId)
+            bindPostColumns(post, 2)
+            bindString(17, post.id)
+            executeUpdateDelete()
         }
 
-        if (customEmojis != null && customEmojis.length() > 0) {
-            insertCustomEmojis(db, customEmojis)
+        if (post.reactions.isNotEmpty()) {
+            syncReactions(db, post.reactions, existingReactions)
         }
     } catch (e: Exception) {
         e.printStackTrace()
     }
 }
 
-fun DatabaseHelper.handlePosts(db: WMDatabase, postsData: ReadableMap?, channelId: String, receivingThreads: Boolean) {
+/**
+ * Binds the columns shared by [Statement.INSERT_POST] and [Statement.UPDATE_POST],
+ * from create_at to props, starting at [start]
+ */
+private fun SQLiteStatement.bindPostColumns(post: Post, start: Int) {
+    bindDouble(start, post.createAt)
+    bindDouble(start + 1, post.deleteAt)
+    bindDouble(start + 2, post.updateAt)
+    bindDouble(start + 3, post.editAt)
+    bindBoolean(start + 4, post.isPinned)
+    bindString(start + 5, post.message)
+    bindString(start + 6, post.messageSource)
+    bindString(start + 7, post.metadataJson())
+    bindString(start + 8, post.originalId)
+    bindString(start + 9, post.pendingPostId)
+    bindString(start + 10, post.prevPostId ?: "")
+    bindString(start + 11, post.rootId)
+    bindString(start + 12, post.type)
+    bindString(start + 13, post.userId)
+    bindString(start + 14, post.propsJson())
+}
+
+fun DatabaseHelper.handlePosts(db: WMDatabase, postList: PostList?, channelId: String, receivingThreads: Boolean) {
     // Posts, PostInChannel, PostInThread, Reactions, Files, CustomEmojis, Users
     try {
-        if (postsData != null) {
-            val ordered = postsData.getArray("order")?.toArrayList()
-            val posts = ReadableMapUtils.toJSONObject(postsData.getMap("posts")).toMap()
-            val previousPostId = postsData.getString("prev_post_id")
-            val postsInThread = hashMapOf<String, List<JSONObject>>()
-            val postList = posts.toList()
+        if (postList != null) {
+            val ordered = postList.order
+            val postsInThread = hashMapOf<String, MutableList<Post>>()
             var earliest = 0.0
             var latest = 0.0
 
-            if (ordered != null && posts.isNotEmpty()) {
+            if (ordered.isNotEmpty() && postList.posts.isNotEmpty()) {
                 val firstId = ordered.first()
                 val lastId = ordered.last()
+                val orderedIds = ordered.toHashSet()
                 var prevPostId = ""
 
-                val sortedPosts = postList.sortedBy { (_, value) ->
-                    ((value as Map<*, *>)["create_at"] as Double)
-                }
+                val sortedPosts = postList.posts.entries.sortedBy { it.value.createAt }
 
-                sortedPosts.forEachIndexed { index, it ->
-                    val key = it.first
-                    if (it.second != null) {
-                        @Suppress("UNCHECKED_CAST", "UNCHECKED_CAST")
-                        val post: MutableMap<String, Any?> = it.second as MutableMap<String, Any?>
+                // Look up which posts and reactions are already stored once for the whole list
+                // instead of once per post
+                val existingIds = queryExistingIds(db, "Post", postList.posts.keys)
+                val existingReactions = queryReactionsByPost(
+                        db,
+                        postList.posts.filter { (key, post) -> existingIds.contains(key) && post.reactions.isNotEmpty() }.keys
+                )
+                val customEmojis = LinkedHashMap<String, CustomEmoji>()
 
+                sortedPosts.forEachIndexed { index, (key, post) ->
+                    if (post.prevPostId == null) {
                         if (index == 0) {
-                            post.putIfAbsent("prev_post_id", previousPostId)
+                            post.prevPostId = postList.prevPostId
                         } else if (prevPostId.isNotEmpty()) {
-                            post.putIfAbsent("prev_post_id", prevPostId)
-                        }
-
-                        if (lastId == key) {
-                            earliest = post["create_at"] as Double
-                        }
-                        if (firstId == key) {
-                            latest = post["create_at"] as Double
+                            post.prevPostId = prevPostId
                         }
+                    }
 
-                        val jsonPost = JSONObject(post)
-                        val postId = post["id"] as? String ?: ""
-                        val rootId = post["root_id"] as? String ?: ""
-                        val postInThread = rootId.ifEmpty { postId }
-                        var thread = postsInThread[postInThread]?.toMutableList()
-                        if (thread == null) {
-                            thread = mutableListOf()
-                        }
+                    if (lastId == key) {
+                        earliest = post.createAt
+                    }
+                    if (firstId == key) {
+                        latest = post.createAt
+                    }
 
-                        thread.add(jsonPost)
-                        postsInThread[postInThread] = thread.toList()
+                    val postInThread = post.rootId.ifEmpty { post.id }
+                    postsInThread.getOrPut(postInThread) { mutableListOf() }.add(post)
 
-                        if (find(db, "Post", key) == null) {
-                            insertPost(db, jsonPost)
-                        } else {
-                            updatePost(db, jsonPost)
-                        }
+                    if (existingIds.contains(key)) {
+                        updatePost(db, post, existingReactions[key])
+                    } else {
+                        insertPost(db, post)
+                    }
+                    post.emojis.forEach { customEmojis[it.id] = it }
 
-                        if (ordered.contains(key)) {
-                            prevPostId = key
-                        }
+                    if (orderedIds.contains(key)) {
+                        prevPostId = key
                     }
                 }
+
+                if (customEmojis.isNotEmpty()) {
+                    insertCustomEmojis(db, customEmojis.values)
+                }
             }
 
             if (!receivingThreads) {
@@ -1,28 +1,82 @@
 package com.mattermost.helpers.database_extension
 
 import com.mattermost.helpers.RandomId
+import com.mattermost.helpers.push_notification.Reaction
 import com.nozbe.watermelondb.WMDatabase
-import org.json.JSONArray
 
-internal fun insertReactions(db: WMDatabase, reactions: JSONArray) {
-    for (i in 0 until reactions.length()) {
+internal fun insertReactions(db: WMDatabase, reactions: List<Reaction>) {
+    for (reaction in reactions) {
         try {
-            val reaction = reactions.getJSONObject(i)
             val id = RandomId.generate()
-            db.execute(
-                    """
-                    INSERT INTO Reaction 
-                    (id, create_at, emoji_name, post_id, user_id, _changed, _status) 
-                    VALUES (?, ?, ?, ?, ?, '', 'created')
-                    """.trimIndent(),
-                    arrayOf(
-                            id,
-                            reaction.getDouble("create_at"), reaction.getString("emoji_name"),
-                            reaction.getString("post_id"), reaction.getString("user_id")
-                    )
-            )
+            db.withStatement(Statement.INSERT_REACTION) {
+                bindString(1, id)
+                bindDouble(2, reaction.createAt)
+                bindString(3, reaction.emojiName)
+                bindString(4, reaction.postId)
+                bindString(5, reaction.userId)
+                executeInsert()
+            }
         } catch (e: Exception) {
             e.printStackTrace()
         }
     }
 }
+
+/**
+ * Returns the stored reactions of each post, as record ids by user id and emoji name
+ */
+internal fun queryReactionsByPost(db: WMDatabase, postIds: Collection<String>): Map<String, Map<String, String>> {
+    val result = HashMap<String, HashMap<String, String>>()
+    postIds.chunked(MAX_QUERY_ARGS).forEach { chunk ->
+        try {
+            val args = chunk.joinToString(",") { "?" }
+            db.rawQuery(
+                    "SELECT id, post_id, user_id, emoji_name FROM Reaction WHERE post_id IN ($args)",
+                    chunk.toTypedArray<Any?>()
+            ).use { cursor ->
+                while (cursor.moveToNext()) {
+                    val reactions = result.getOrPut(cursor.getString(1)) { HashMap() }
+                    reactions[reactionKey(cursor.getString(2), cursor.getString(3))] = cursor.getString(0)
+                }
+            }
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+    }
+    return result
+}
+
+/**
+ * Applies the difference between the [existing] reactions of a post and the received ones,
+ * so the reactions that did not change keep their records
+ */
+internal fun syncReactions(db: WMDatabase, reactions: List<Reaction>, existing: Map<String, String>?) {
+    if (existing.isNullOrEmpty()) {
+        insertReactions(db, reactions)
+        return
+    }
+
+    val received = HashSet<String>(reactions.size)
+    val added = reactions.filter {
+        val key = reactionKey(it.userId, it.emojiName)
+        received.add(key)
+        !existing.containsKey(key)
+    }
+
+    existing.forEach { (key, id) ->
+        if (!received.contains(key)) {
+            try {
+                db.withStatement(Statement.DELETE_REACTION) {
+                    bindString(1, id)
+                    executeUpdateDelete()
+                }
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+    }
+
+    insertReactions(db, added)
+}
+
+private fun reactionKey(userId: String, emojiName: String) = "$userId-$emojiName"
@@ -0,0 +1,99 @@
+package com.mattermost.helpers.database_extension
+
+import android.database.sqlite.SQLiteStatement
+import com.nozbe.watermelondb.WMDatabase
+import java.util.EnumMap
+import java.util.WeakHashMap
+
+/**
+ * Statements run in loops by the writers of this package while saving a push notification.
+ *
+ * Each one is compiled once per connection by [StatementCache] and reused with typed bindings,
+ * instead of handing a new SQL string and an array of boxed arguments to `db.execute` for every row.
+ */
+internal enum class Statement(val sql: String) {
+    INSERT_POST(
+            "INSERT INTO Post (id, channel_id, create_at, delete_at, update_at, edit_at, is_pinned, message, message_source, metadata, " +
+                    "original_id, pending_post_id, previous_post_id, root_id, type, user_id, props, _changed, _status) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, '', 'created')"
+    ),
+    UPDATE_POST(
+            "UPDATE Post SET channel_id = ?, create_at = ?, delete_at = ?, update_at = ?, edit_at = ?, is_pinned = ?, message = ?, " +
+                    "message_source = ?, metadata = ?, original_id = ?, pending_post_id = ?, previous_post_id = ?, root_id = ?, type = ?, " +
+                    "user_id = ?, props = ?, _status = 'updated' WHERE id = ?"
+    ),
+    INSERT_REACTION(
+            "INSERT INTO Reaction (id, create_at, emoji_name, post_id, user_id, _changed, _status) VALUES (?, ?, ?, ?, ?, '', 'created')"
+    ),
+    DELETE_REACTION("DELETE FROM Reaction WHERE id = ?"),
+    INSERT_FILE(
+            "INSERT INTO File (id, extension, height, image_thumbnail, local_path, mime_type, name, post_id, size, width, _changed, _status) " +
+                    "VALUES (?, ?, ?, ?, '', ?, ?, ?, ?, ?, '', 'created')"
+    ),
+    INSERT_CUSTOM_EMOJI("INSERT INTO CustomEmoji (id, name, _changed, _status) VALUES (?, ?, '', 'created')"),
+    INSERT_THREAD(
+            "INSERT INTO Thread (id, last_reply_at, last_fetched_at, last_viewed_at, reply_count, is_following, unread_replies, " +
+                    "unread_mentions, viewed_at, _changed, _status) VALUES (?, ?, 0, ?, ?, ?, ?, ?, 0, '', 'created')"
+    ),
+    UPDATE_THREAD(
+            "UPDATE Thread SET last_reply_at = ?, last_viewed_at = ?, reply_count = ?, is_following = ?, unread_replies = ?, " +
+                    "unread_mentions = ?, _status = 'updated' WHERE id = ?"
+    ),
+    INSERT_THREAD_PARTICIPANT(
+            "INSERT INTO ThreadParticipant (id, thread_id, user_id, _changed, _status) VALUES (?, ?, ?, '', 'created')"
+    ),
+    DELETE_THREAD_PARTICIPANTS("DELETE FROM ThreadParticipant WHERE thread_id = ?"),
+    INSERT_THREAD_IN_TEAM(
+            "INSERT INTO ThreadsInTeam (id, team_id, thread_id, _changed, _status) VALUES (?, ?, ?, '', 'created')"
+    ),
+    INSERT_CATEGORY_CHANNEL(
+            "INSERT INTO CategoryChannel (id, category_id, channel_id, sort_order, _changed, _status) VALUES (?, ?, ?, ?, '', 'created')"
+    ),
+}
+
+/**
+ * Compiled statements by connection, they are closed with the connection through [release]
+ */
+internal object StatementCache {
+    private val statements = WeakHashMap<WMDatabase, EnumMap<Statement, SQLiteStatement>>()
+
+    @Synchronized
+    fun get(db: WMDatabase, statement: Statement): SQLiteStatement {
+        val compiled = statements.getOrPut(db) { EnumMap(Statement::class.java) }
+        return compiled.getOrPut(statement) { db.compileStatement(statement.sql) }
+    }
+
+    @Synchronized
+    fun release(db: WMDatabase) {
+        statements.remove(db)?.values?.forEach {
+            try {
+                it.close()
+            } catch (e: Exception) {
+                e.printStackTrace()
+            }
+        }
+    }
+}
+
+/**
+ * Runs [block] with the cached compiled [statement] for this connection, its previous bindings cleared
+ */
+internal inline fun <T> WMDatabase.withStatement(statement: Statement, block: SQLiteStatement.() -> T): T {
+    val compiled = StatementCache.get(this, statement)
+    synchronized(compiled) {
+        compiled.clearBindings()
+        return compiled.block()
+    }
+}
+
+internal fun SQLiteStatement.bindBoolean(index: Int, value: Boolean) {
+    bindLong(index, if (value) 1 else 0)
+}
+
+internal fun SQLiteStatement.bindNullableString(index: Int, value: String?) {
+    if (value == null) {
+        bindNull(index)
+    } else {
+        bindString(index, value)
+    }
+}
@@ -7,8 +7,8 @@ import com.facebook.react.bridge.ReadableArray
 import com.facebook.react.bridge.ReadableMap
 import com.mattermost.helpers.RandomId
 import com.mattermost.helpers.mapCursor
+import com.mattermost.helpers.push_notification.Post
 import com.nozbe.watermelondb.WMDatabase
-import org.json.JSONObject
 
 private fun getLastReplyAt(thread: ReadableMap): Double {
     try {
@@ -30,23 +30,22 @@ internal fun insertThread(db: WMDatabase, thread: ReadableMap) {
     try {
         val id = try { thread.getString("id") } catch (e: NoSuchKeyException) { return }
         val isFollowing = try { thread.getBoolean("is_following") } catch (e: NoSuchKeyException) { false }
-        val lastViewedAt = try { thread.getDouble("last_viewed_at") } catch (e: NoSuchKeyException) { 0 }
+        val lastViewedAt = try { thread.getDouble("last_viewed_at") } catch (e: NoSuchKeyException) { 0.0 }
         val unreadReplies = try { thread.getInt("unread_replies") } catch (e: NoSuchKeyException) { 0 }
         val unreadMentions = try { thread.getInt("unread_mentions") } catch (e: NoSuchKeyException) { 0 }
         val lastReplyAt = getLastReplyAt(thread)
         val replyCount = try { thread.getInt("reply_count") } catch (e: NoSuchKeyException) { 0 }
 
-        db.execute(
-                """
-                INSERT INTO Thread 
-                (id, last_reply_at, last_fetched_at, last_viewed_at, reply_count, is_following, unread_replies, unread_mentions, viewed_at, _changed, _status) 
-                VALUES (?, ?, 0, ?, ?, ?, ?, ?, 0, '', 'created')
-                """.trimIndent(),
-                arrayOf(
-                        id, lastReplyAt, lastViewedAt,
-                        replyCount, isFollowing, unreadReplies, unreadMentions
-                )
-        )
+        db.withStatement(Statement.INSERT_THREAD) {
+            bindNullableString(1, id)
+            bindDouble(2, lastReplyAt)
+            bindDouble(3, lastViewedAt)
+            bindLong(4, replyCount.toLong())
+            bindBoolean(5, isFollowing)
+            bindLong(6, unreadReplies.toLong())
+            bindLong(7, unreadMentions.toLong())
+            executeInsert()
+        }
     } catch (e: Exception) {
         e.printStackTrace()
     }
@@ -63,17 +62,16 @@ internal fun updateThread(db: WMDatabase, thread: ReadableMap, existingRecord: R
         val lastReplyAt = getLastReplyAt(thread)
         val replyCount = try { thread.getInt("reply_count") } catch (e: NoSuchKeyException) { 0 }
 
-        db.execute(
-                """
-                UPDATE Thread SET 
-                last_reply_at = ?, last_viewed_at = ?, reply_count = ?, is_following = ?, unread_replies = ?, 
-                unread_mentions = ?, _status = 'updated' where id = ?
-                """.trimIndent(),
-                arrayOf(
-                        lastReplyAt, lastViewedAt, replyCount,
-                        isFollowing, unreadReplies, unreadMentions, id
-                )
-        )
+        db.withStatement(Statement.UPDATE_THREAD) {
+            bindDouble(1, lastReplyAt)
+            bindDouble(2, lastViewedAt)
+            bindLong(3, replyCount.toLong())
+            bindBoolean(4, isFollowing)
+            bindLong(5, unreadReplies.toLong())
+            bindLong(6, unreadMentions.toLong())
+            bindNullableString(7, id)
+            executeUpdateDelete()
+        }
     } catch (e: Exception) {
         e.printStackTrace()
     }
@@ -85,14 +83,12 @@ internal fun insertThreadParticipants(db: WMDatabase, threadId: String, particip
             val participant = participants.getMap(i)
             participant?.let {
                 val id = RandomId.generate()
-                db.execute(
-                        """
-                        INSERT INTO ThreadParticipant 
-                        (id, thread_id, user_id, _changed, _status) 
-                        VALUES (?, ?, ?, '', 'created')
-                        """.trimIndent(),
-                        arrayOf(id, threadId, it.getString("id"))
-                )
+                db.withStatement(Statement.INSERT_THREAD_PARTICIPANT) {
+                    bindString(1, id)
+                    bindString(2, threadId)
+                    bindNullableString(3, it.getString("id"))
+                    executeInsert()
+                }
             }
         } catch (e: Exception) {
             e.printStackTrace()
@@ -128,7 +124,10 @@ fun syncParticipants(db: WMDatabase, thread: ReadableMap) {
         val threadId = thread.getString("id")
         val participants = thread.getArray("participants")
         if (participants != null) {
-            db.execute("DELETE FROM ThreadParticipant WHERE thread_id = ?", arrayOf(threadId))
+            db.withStatement(Statement.DELETE_THREAD_PARTICIPANTS) {
+                bindNullableString(1, threadId)
+                executeUpdateDelete()
+            }
 
             if (participants.size() > 0) {
                 insertThreadParticipants(db, threadId!!, participants)
@@ -139,12 +138,11 @@ fun syncParticipants(db: WMDatabase, thread: ReadableMap) {
     }
 }
 
-internal fun handlePostsInThread(db: WMDatabase, postsInThread: Map<String, List<JSONObject>>) {
+internal fun handlePostsInThread(db: WMDatabase, postsInThread: Map<String, List<Post>>) {
     postsInThread.forEach { (key, list) ->
         try {
-            val sorted = list.sortedBy { it.getDouble("create_at") }
-            val earliest = sorted.first().getDouble("create_at")
-            val latest = sorted.last().getDouble("create_at")
+            val earliest = list.minOf { it.createAt }
+            val latest = list.maxOf { it.createAt }
             db.rawQuery("SELECT * FROM PostsInThread WHERE root_id = ? ORDER BY latest DESC", arrayOf(key)).use { cursor ->
                 if (cursor.count > 0) {
                     cursor.moveToFirst()
@@ -236,11 +234,12 @@ fun handleThreadInTeam(db: WMDatabase, thread: ReadableMap, teamId: String) {
     if (existingRecord == null) {
         try {
             val id = RandomId.generate()
-            val query = """
-            INSERT INTO ThreadsInTeam (id, team_id, thread_id, _changed, _status)
-            VALUES (?, ?, ?, '', 'created')
-            """
-            db.execute(query, arrayOf(id, teamId, threadId))
+            db.withStatement(Statement.INSERT_THREAD_IN_TEAM) {
+                bindString(1, id)
+                bindString(2, teamId)
+                bindString(3, threadId)
+                executeInsert()
+            }
         } catch (e: Exception) {
             e.printStackTrace()
         }
@@ -12,7 +12,7 @@ import com.nozbe.watermelondb.WMDatabase
 suspend fun PushNotificationDataRunnable.Companion.fetchMyTeamCategories(db: WMDatabase, serverUrl: String, teamId: String): ReadableMap? {
     return try {
         val userId = queryCurrentUserId(db)
-        val categories = fetch(serverUrl, "/api/v4/users/$userId/teams/$teamId/channels/categories")
+        val categories = fetchCached(serverUrl, "/api/v4/users/$userId/teams/$teamId/channels/categories")
         categories?.getMap("data")
     } catch (e: Exception) {
         e.printStackTrace()
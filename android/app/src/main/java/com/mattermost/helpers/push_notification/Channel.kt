@@ -9,13 +9,17 @@ import com.mattermost.helpers.database_extension.getCurrentUserLocale
 import com.mattermost.helpers.database_extension.getTeammateDisplayNameSetting
 import com.mattermost.helpers.database_extension.queryCurrentUserId
 import com.nozbe.watermelondb.WMDatabase
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import java.text.Collator
 import java.util.Locale
 
-suspend fun PushNotificationDataRunnable.Companion.fetchMyChannel(db: WMDatabase, serverUrl: String, channelId: String, isCRTEnabled: Boolean): Triple<ReadableMap?, ReadableMap?, ReadableArray?> {
-    val channel = fetch(serverUrl, "/api/v4/channels/$channelId")
+suspend fun PushNotificationDataRunnable.Companion.fetchMyChannel(db: WMDatabase, serverUrl: String, channelId: String, isCRTEnabled: Boolean): Triple<ReadableMap?, ReadableMap?, ReadableArray?> = coroutineScope {
+    // The membership does not depend on the channel response, only the computed counts do
+    val myChannel = async { fetchMyChannelMember(serverUrl, channelId) }
+    val channel = fetchCached(serverUrl, "/api/v4/channels/$channelId")
     var channelData = channel?.getMap("data")
-    val myChannelData = channelData?.let { fetchMyChannelData(serverUrl, channelId, isCRTEnabled, it) }
+    val myChannelData = channelData?.let { buildMyChannelData(myChannel.await(), channelId, isCRTEnabled, it) }
     val channelType = channelData?.getString("type")
     var profilesArray: ReadableArray? = null
 
@@ -56,13 +60,20 @@ suspend fun PushNotificationDataRunnable.Companion.fetchMyChannel(db: WMDatabase
         }
     }
 
-    return Triple(channelData, myChannelData, profilesArray)
+    Triple(channelData, myChannelData, profilesArray)
 }
 
-private suspend fun PushNotificationDataRunnable.Companion.fetchMyChannelData(serverUrl: String, channelId: String, isCRTEnabled: Boolean, channelData: ReadableMap): ReadableMap? {
+private suspend fun PushNotificationDataRunnable.Companion.fetchMyChannelMember(serverUrl: String, channelId: String): ReadableMap? {
+    return try {
+        fetchCached(serverUrl, "/api/v4/channels/$channelId/members/me")?.getMap("data")
+    } catch (e: Exception) {
+        e.printStackTrace()
+        null
+    }
+}
+
+private fun buildMyChannelData(myChannelData: ReadableMap?, channelId: String, isCRTEnabled: Boolean, channelData: ReadableMap): ReadableMap? {
     try {
-        val myChannel = fetch(serverUrl, "/api/v4/channels/$channelId/members/me")
-        val myChannelData = myChannel?.getMap("data")
         if (myChannelData != null) {
             val data = Arguments.createMap()
             data.merge(myChannelData)
@@ -1,18 +1,27 @@
 package com.mattermost.helpers.push_notification
 
+import android.util.JsonReader
+import android.util.JsonToken
+import android.util.JsonWriter
 import android.util.Log
+import com.facebook.react.bridge.Arguments
 import com.facebook.react.bridge.ReadableMap
 import com.mattermost.helpers.Network
 import com.mattermost.helpers.PushNotificationDataRunnable
 import com.mattermost.helpers.ResolvePromise
 
 import java.io.IOException
+import java.io.Reader
+import java.io.StringWriter
 
-import kotlin.coroutines.suspendCoroutine
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.math.abs
 
 internal suspend fun PushNotificationDataRunnable.Companion.fetch(serverUrl: String, endpoint: String): ReadableMap? {
-    return suspendCoroutine { cont ->
-        Network.get(serverUrl, endpoint, null, object : ResolvePromise() {
+    return suspendCancellableCoroutine { cont ->
+        Network.getShared(serverUrl, endpoint, null, object : ResolvePromise() {
             override fun resolve(value: Any?) {
                 val response = value as? ReadableMap
 
@@ -51,7 +60,7 @@ internal suspend fun PushNotificationDataRunnable.Companion.fetch(serverUrl: Str
 }
 
 internal suspend fun PushNotificationDataRunnable.Companion.fetchWithPost(serverUrl: String, endpoint: String, options: ReadableMap?) : ReadableMap? {
-    return suspendCoroutine { cont ->
+    return suspendCancellableCoroutine { cont ->
         Network.post(serverUrl, endpoint, options, object : ResolvePromise() {
             override fun resolve(value: Any?) {
                 val response = value as ReadableMap?
@@ -68,3 +77,117 @@ internal suspend fun PushNotificationDataRunnable.Companion.fetchWithPost(server
         })
     }
 }
+
+/**
+ * Performs a GET request and hands the response body to [parse] as a stream,
+ * so large payloads are never materialized as bridge maps.
+ * The blocking request is interrupted if the coroutine is cancelled, like the other fetches.
+ */
+internal suspend fun <T> PushNotificationDataRunnable.Companion.fetchAndParse(serverUrl: String, endpoint: String, parse: (Reader) -> T): T {
+    return runInterruptible(Dispatchers.IO) {
+        Network.getSync(serverUrl, endpoint, null).use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("Unexpected code ${response.code} ${response.message}")
+            }
+            val body = response.body ?: throw IOException("Empty response from $serverUrl/$endpoint")
+            parse(body.charStream())
+        }
+    }
+}
+
+/**
+ * Same as [fetch] for resources that rarely change, like channels, teams and their memberships.
+ * The request is sent with the validators of the last response, which is reused when the server answers with a 304.
+ */
+internal suspend fun PushNotificationDataRunnable.Companion.fetchCached(serverUrl: String, endpoint: String): ReadableMap? {
+    return runInterruptible(Dispatchers.IO) {
+        Network.getSyncConditional(serverUrl, endpoint, null).use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("Unexpected code ${response.code} ${response.message}")
+            }
+            val body = response.body ?: throw IOException("Empty response from $serverUrl/$endpoint")
+            val data = JsonReader(body.charStream()).use { readValue(it) }
+
+            val map = Arguments.createMap()
+            map.putBoolean("ok", true)
+            map.putInt("code", response.code)
+            when (data) {
+                is Map<*, *> -> {
+                    @Suppress("UNCHECKED_CAST")
+                    map.putMap("data", Arguments.makeNativeMap(data as Map<String, Any?>))
+                }
+                is List<*> -> map.putArray("data", Arguments.makeNativeArray(data))
+                else -> map.putNull("data")
+            }
+            map
+        }
+    }
+}
+
+/**
+ * Reads any JSON value as plain maps and lists, numbers are read as doubles like the bridge does
+ */
+internal fun readValue(reader: JsonReader): Any? {
+    return when (reader.peek()) {
+        JsonToken.BEGIN_OBJECT -> {
+            val map = LinkedHashMap<String, Any?>()
+            reader.beginObject()
+            while (reader.hasNext()) {
+                map[reader.nextName()] = readValue(reader)
+            }
+            reader.endObject()
+            map
+        }
+        JsonToken.BEGIN_ARRAY -> {
+            val list = ArrayList<Any?>()
+            reader.beginArray()
+            while (reader.hasNext()) {
+                list.add(readValue(reader))
+            }
+            reader.endArray()
+            list
+        }
+        JsonToken.STRING -> reader.nextString()
+        JsonToken.NUMBER -> reader.nextDouble()
+        JsonToken.BOOLEAN -> reader.nextBoolean()
+        else -> {
+            reader.nextNull()
+            null
+        }
+    }
+}
+
+/**
+ * Writes a value read by [readValue] back as JSON, the whole numbers without their decimal part
+ */
+internal fun writeJson(value: Any?): String {
+    val output = StringWriter()
+    JsonWriter(output).use { writeJsonValue(it, value) }
+    return output.toString()
+}
+
+private fun writeJsonValue(writer: JsonWriter, value: Any?) {
+    when (value) {
+        null -> writer.nullValue()
+        is Map<*, *> -> {
+            writer.beginObject()
+            for ((key, item) in value) {
+                writer.name(key.toString())
+                writeJsonValue(writer, item)
+            }
+            writer.endObject()
+        }
+        is List<*> -> {
+            writer.beginArray()
+            value.forEach { writeJsonValue(writer, it) }
+            writer.endArray()
+        }
+        is Double -> if (value % 1.0 == 0.0 && abs(value) < MAX_SAFE_INTEGER) writer.value(value.toLong()) else writer.value(value)
+        is Number -> writer.value(value)
+        is Boolean -> writer.value(value)
+        else -> writer.value(value.toString())
+    }
+}
+
+// Largest integer a double holds exactly
+private const val MAX_SAFE_INTEGER = 9_007_199_254_740_991.0
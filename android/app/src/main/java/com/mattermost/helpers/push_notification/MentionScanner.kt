@@ -0,0 +1,42 @@
+package com.mattermost.helpers.push_notification
+
+/**
+ * Finds the `@username` mentions of a text in a single pass.
+ *
+ * It reports the same usernames as `\B@(([a-z\d-._]*[a-z\d_])[.-]*)` matched ignoring case: an `@` that
+ * is not preceded by a word character, followed by the longest run of letters, digits, `.`, `-` and `_`
+ * that contains at least one letter, digit or `_`. Like the regex the trailing dots and dashes are kept.
+ */
+internal object MentionScanner {
+    inline fun forEachMention(text: CharSequence, onMention: (String) -> Unit) {
+        val length = text.length
+        var i = text.indexOf('@')
+        while (i >= 0) {
+            var end = i + 1
+            if (i == 0 || !isWordChar(text[i - 1])) {
+                var hasNameChar = false
+                while (end < length) {
+                    val c = text[end]
+                    if (isNameChar(c)) {
+                        hasNameChar = true
+                    } else if (c != '.' && c != '-') {
+                        break
+                    }
+                    end++
+                }
+                if (hasNameChar) {
+                    onMention(text.substring(i + 1, end))
+                }
+            }
+            i = text.indexOf('@', end)
+        }
+    }
+
+    fun isNameChar(c: Char): Boolean {
+        return c in 'a'..'z' || c in 'A'..'Z' || c == '_' || Character.isDigit(c)
+    }
+
+    fun isWordChar(c: Char): Boolean {
+        return c == '_' || Character.isLetterOrDigit(c)
+    }
+}
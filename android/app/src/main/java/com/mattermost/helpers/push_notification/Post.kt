@@ -1,22 +1,31 @@
 package com.mattermost.helpers.push_notification
 
 import com.facebook.react.bridge.Arguments
-import com.facebook.react.bridge.NoSuchKeyException
 import com.facebook.react.bridge.ReadableArray
 import com.facebook.react.bridge.ReadableMap
 import com.facebook.react.bridge.WritableNativeArray
 import com.mattermost.helpers.PushNotificationDataRunnable
-import com.mattermost.helpers.ReadableArrayUtils
-import com.mattermost.helpers.ReadableMapUtils
 import com.mattermost.helpers.database_extension.*
 import com.nozbe.watermelondb.WMDatabase
 
+/**
+ * Posts fetched for a push notification along with what is still needed to display them.
+ *
+ * The posts are kept typed, the bridge maps are only built for the data handed over to JS.
+ */
+internal class PostsResult(
+        val postList: PostList,
+        val threads: ReadableArray?,
+        val userIdsToLoad: List<String>,
+        val usernamesToLoad: List<String>,
+        val usersFromThreads: ReadableArray?
+)
+
 internal suspend fun PushNotificationDataRunnable.Companion.fetchPosts(
         db: WMDatabase, serverUrl: String, channelId: String, isCRTEnabled: Boolean,
-        rootId: String?, loadedProfiles: ReadableArray?
-): ReadableMap? {
+        rootId: String?, includePostMaps: Boolean
+): PostsResult? {
     return try {
-        val regex = Regex("""\B@(([a-z\d-._]*[a-z\d_])[.-]*)""", setOf(RegexOption.IGNORE_CASE))
         val currentUserId = queryCurrentUserId(db)
         val currentUser = find(db, "User", currentUserId)
         val currentUsername = currentUser?.getString("username")
@@ -39,166 +48,121 @@ internal suspend fun PushNotificationDataRunnable.Companion.fetchPosts(
             "/api/v4/channels/$channelId/posts$queryParams$additionalParams"
         }
 
-        val postsResponse = fetch(serverUrl, endpoint)
-        val postData = postsResponse?.getMap("data")
-        val results = Arguments.createMap()
-
-        if (postData != null) {
-            val data = ReadableMapUtils.toMap(postData)
-            results.putMap("posts", postData)
-            if (data != null) {
-                val postsMap = data["posts"]
-                if (postsMap != null) {
-                    @Suppress("UNCHECKED_CAST")
-                    val posts = ReadableMapUtils.toWritableMap(postsMap as? Map<String, Any>)
-                    val iterator = posts.keySetIterator()
-                    val userIds = mutableListOf<String>()
-                    val usernames = mutableListOf<String>()
-
-                    val threads = WritableNativeArray()
-                    val threadParticipantUserIds = mutableListOf<String>() // Used to exclude the "userIds" present in the thread participants
-                    val threadParticipantUsernames = mutableListOf<String>() // Used to exclude the "usernames" present in the thread participants
-                    val threadParticipantUsers = HashMap<String, ReadableMap>() // All unique users from thread participants are stored here
-                    val userIdsAlreadyLoaded = mutableListOf<String>()
-                    if (loadedProfiles != null) {
-                        for (i in 0 until loadedProfiles.size()) {
-                            loadedProfiles.getMap(i)?.getString("id")?.let { userIdsAlreadyLoaded.add(it) }
-                        }
-                    }
-
-                    fun findNeededUsernames(text: String?) {
-                        if (text == null) {
-                            return
-                        }
+        val postList = fetchAndParse(serverUrl, endpoint, PostList::parse)
+        val userIds = LinkedHashSet<String>()
+        val usernames = LinkedHashSet<String>()
 
-                        val matchResults = regex.findAll(text)
-                        matchResults.iterator().forEach {
-                            val username = it.value.removePrefix("@")
-                            if (!usernames.contains(username) && currentUsername != username && !specialMentions.contains(username)) {
-                                usernames.add(username)
-                            }
-                        }
-                    }
+        val threads = WritableNativeArray()
+        val threadParticipantUserIds = HashSet<String>() // Used to exclude the "userIds" present in the thread participants
+        val threadParticipantUsernames = HashSet<String>() // Used to exclude the "usernames" present in the thread participants
+        val threadParticipantUsers = LinkedHashMap<String, ReadableMap>() // All unique users from thread participants are stored here
 
-                    while (iterator.hasNextKey()) {
-                        val key = iterator.nextKey()
-                        val post = posts.getMap(key)
-                        val userId = post?.getString("user_id")
-                        if (userId != null && userId != currentUserId && !userIdsAlreadyLoaded.contains(userId) && !userIds.contains(userId)) {
-                            userIds.add(userId)
-                        }
+        fun findNeededUsernames(text: String?) {
+            if (text == null) {
+                return
+            }
 
-                        val message = post?.getString("message")
-                        findNeededUsernames(message)
-                        val props = post?.getMap("props")
-                        val attachments = props?.getArray("attachments")
-                        if (attachments != null) {
-                            for (i in 0 until attachments.size()) {
-                                val attachment = attachments.getMap(i)
-                                attachment?.let {
-                                    val pretext = it.getString("pretext")
-                                    val text = it.getString("text")
-                                    findNeededUsernames(pretext)
-                                    findNeededUsernames(text)
-                                }
-                            }
-                        }
+            MentionScanner.forEachMention(text) { username ->
+                if (currentUsername != username && !specialMentions.contains(username)) {
+                    usernames.add(username)
+                }
+            }
+        }
 
+        postList.posts.values.forEach { post ->
+            val userId = post.userId
+            if (userId.isNotEmpty() && userId != currentUserId) {
+                userIds.add(userId)
+            }
 
-                        if (isCRTEnabled) {
-                            // Add root post as a thread
-                            val threadId = post?.getString("root_id")
-                            if (threadId.isNullOrEmpty()) {
-                                post?.let {
-                                    val thread = Arguments.createMap()
-                                    thread.putString("id", it.getString("id"))
-                                    thread.putInt("reply_count", it.getInt("reply_count"))
-                                    thread.putDouble("last_reply_at", 0.0)
-                                    thread.putDouble("last_viewed_at", 0.0)
-                                    thread.putArray("participants", it.getArray("participants"))
-                                    thread.putMap("post", it)
-                                    thread.putBoolean("is_following", try {
-                                        it.getBoolean("is_following")
-                                    } catch (e: NoSuchKeyException) {
-                                        false
-                                    })
-                                    thread.putInt("unread_replies", 0)
-                                    thread.putInt("unread_mentions", 0)
-                                    thread.putDouble("delete_at", it.getDouble("delete_at"))
-                                    threads.pushMap(thread)
-                                }
-                            }
+            findNeededUsernames(post.message)
+            (post.props?.get("attachments") as? List<*>)?.forEach { attachment ->
+                (attachment as? Map<*, *>)?.let {
+                    findNeededUsernames(it["pretext"] as? String)
+                    findNeededUsernames(it["text"] as? String)
+                }
+            }
 
-                            // Add participant userIds and usernames to exclude them from getting fetched again
-                            val participants = post?.getArray("participants")
-                            participants?.let {
-                                for (i in 0 until it.size()) {
-                                    val participant = it.getMap(i)
-                                    participant?.let { p ->
-                                        val participantId = p.getString("id")
-                                        if (participantId != currentUserId && participantId != null) {
-                                            if (!threadParticipantUserIds.contains(participantId) && !userIdsAlreadyLoaded.contains(participantId)) {
-                                                threadParticipantUserIds.add(participantId)
-                                            }
-
-                                            if (!threadParticipantUsers.containsKey(participantId)) {
-                                                threadParticipantUsers[participantId] = p
-                                            }
-                                        }
-
-                                        val username = p.getString("username")
-                                        if (username != null && username != currentUsername && !threadParticipantUsernames.contains(username)) {
-                                            threadParticipantUsernames.add(username)
-                                        }
-                                    }
-                                }
+            if (isCRTEnabled) {
+                // Add participant userIds and usernames to exclude them from getting fetched again
+                post.participantsArray()?.let {
+                    for (i in 0 until it.size()) {
+                        val participant = it.getMap(i)
+                        participant?.let { p ->
+                            val participantId = p.getString("id")
+                            if (participantId != currentUserId && participantId != null) {
+                                threadParticipantUserIds.add(participantId)
+                                threadParticipantUsers.getOrPut(participantId) { p }
                             }
-                        }
-                    }
-
-                    val existingUserIds = queryIds(db, "User", userIds.toTypedArray())
-                    val existingUsernames = queryByColumn(db, "User", "username", usernames.toTypedArray())
-                    userIds.removeAll { it in existingUserIds }
-                    usernames.removeAll { it in existingUsernames }
-
-                    if (threadParticipantUserIds.size > 0) {
-                        // Do not fetch users found in thread participants as we get the user's data in the posts response already
-                        userIds.removeAll { it in threadParticipantUserIds }
-                        usernames.removeAll { it in threadParticipantUsernames }
 
-                        // Get users from thread participants
-                        val existingThreadParticipantUserIds = queryIds(db, "User", threadParticipantUserIds.toTypedArray())
-
-                        // Exclude the thread participants already present in the DB from getting inserted again
-                        val usersFromThreads = WritableNativeArray()
-                        threadParticipantUsers.forEach { (userId, user) ->
-                            if (!existingThreadParticipantUserIds.contains(userId)) {
-                                usersFromThreads.pushMap(user)
+                            val username = p.getString("username")
+                            if (username != null && username != currentUsername) {
+                                threadParticipantUsernames.add(username)
                             }
                         }
-
-                        if (usersFromThreads.size() > 0) {
-                            results.putArray("usersFromThreads", usersFromThreads)
-                        }
-                    }
-
-                    if (userIds.size > 0) {
-                        results.putArray("userIdsToLoad", ReadableArrayUtils.toWritableArray(userIds.toTypedArray()))
                     }
+                }
 
-                    if (usernames.size > 0) {
-                        results.putArray("usernamesToLoad", ReadableArrayUtils.toWritableArray(usernames.toTypedArray()))
-                    }
+                // Add root post as a thread
+                if (post.rootId.isEmpty()) {
+                    val thread = Arguments.createMap()
+                    thread.putString("id", post.id)
+                    thread.putInt("reply_count", post.replyCount)
+                    thread.putDouble("last_reply_at", 0.0)
+                    thread.putDouble("last_viewed_at", 0.0)
+                    thread.putArray("participants", post.participantsArray())
+                    thread.putMap("post", if (includePostMaps) post.toReadableMap() else threadPost(post))
+                    thread.putBoolean("is_following", post.isFollowing)
+                    thread.putInt("unread_replies", 0)
+                    thread.putInt("unread_mentions", 0)
+                    thread.putDouble("delete_at", post.deleteAt)
+                    threads.pushMap(thread)
+                }
+            }
+        }
 
-                    if (threads.size() > 0) {
-                        results.putArray("threads", threads)
-                    }
+        userIds.removeAll(queryExistingIds(db, "User", userIds))
+        val existingUsernames = usernames.chunked(MAX_QUERY_ARGS).flatMap { chunk ->
+            queryByColumn(db, "User", "username", chunk.toTypedArray<Any?>())
+        }
+        usernames.removeAll(existingUsernames.toHashSet())
+
+        var usersFromThreads: ReadableArray? = null
+        if (threadParticipantUserIds.size > 0) {
+            // Do not fetch users found in thread participants as we get the user's data in the posts response already
+            userIds.removeAll(threadParticipantUserIds)
+            usernames.removeAll(threadParticipantUsernames)
+
+            // Get users from thread participants
+            val existingThreadParticipantUserIds = queryExistingIds(db, "User", threadParticipantUserIds)
+
+            // Exclude the thread participants already present in the DB from getting inserted again
+            val users = WritableNativeArray()
+            threadParticipantUsers.forEach { (userId, user) ->
+                if (!existingThreadParticipantUserIds.contains(userId)) {
+                    users.pushMap(user)
                 }
             }
+
+            if (users.size() > 0) {
+                usersFromThreads = users
+            }
         }
-        results
+
+        PostsResult(postList, threads.takeIf { it.size() > 0 }, userIds.toList(), usernames.toList(), usersFromThreads)
     } catch (e: Exception) {
         e.printStackTrace()
         null
     }
 }
+
+/**
+ * The native side only needs the root post creation time to store a thread
+ */
+private fun threadPost(post: Post): ReadableMap {
+    val map = Arguments.createMap()
+    map.putString("id", post.id)
+    map.putString("channel_id", post.channelId)
+    map.putDouble("create_at", post.createAt)
+    return map
+}
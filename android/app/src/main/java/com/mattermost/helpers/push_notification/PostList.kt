@@ -0,0 +1,324 @@
+package com.mattermost.helpers.push_notification
+
+import android.util.JsonReader
+import android.util.JsonToken
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.bridge.ReadableArray
+import com.facebook.react.bridge.ReadableMap
+import com.facebook.react.bridge.WritableMap
+import java.io.Reader
+
+/**
+ * Typed models for the posts endpoints, read straight from the response stream.
+ *
+ * Only the fields stored by the native side are typed, the nested objects and anything else are read as plain
+ * maps and lists, along with which fields were received, so the React Native maps can still be built with the
+ * shape of the response when the JS side needs them (see [PostList.toReadableMap]).
+ */
+internal class Reaction(
+        val userId: String,
+        val postId: String,
+        val emojiName: String,
+        val createAt: Double
+)
+
+internal class FileInfo(
+        val id: String,
+        val postId: String,
+        val name: String,
+        val extension: String,
+        val mimeType: String,
+        val size: Double,
+        val width: Int,
+        val height: Int,
+        val miniPreview: String
+)
+
+internal class CustomEmoji(val id: String, val name: String)
+
+internal class Post {
+    var id = ""
+    var channelId = ""
+    var userId = ""
+    var rootId = ""
+    var originalId = ""
+    var pendingPostId = ""
+    var prevPostId: String? = null
+    var type = ""
+    var message = ""
+    var messageSource = ""
+    var createAt = 0.0
+    var updateAt = 0.0
+    var deleteAt = 0.0
+    var editAt = 0.0
+    var isPinned = false
+    var isFollowing = false
+    var replyCount = 0
+    var props: Map<String, Any?>? = null
+    // Metadata as received, the reactions, emojis and files are also typed below
+    var metadata: Map<String, Any?>? = null
+    var reactions: List<Reaction> = emptyList()
+    var files: List<FileInfo> = emptyList()
+    var emojis: List<CustomEmoji> = emptyList()
+    var participants: List<Any?>? = null
+    val extras = LinkedHashMap<String, Any?>()
+
+    // Fields of the response, in order, and those that were null, so the map handed to JS keeps its shape
+    internal val fields = LinkedHashSet<String>()
+    internal val nullFields = HashSet<String>()
+
+    val lastChangedAt: Double
+        get() = maxOf(createAt, updateAt, deleteAt)
+
+    fun participantsArray(): ReadableArray? {
+        return participants?.let { Arguments.makeNativeArray(it) }
+    }
+
+    /**
+     * JSON stored in the metadata column, without the reactions, emojis and files stored in their own tables
+     */
+    fun metadataJson(): String {
+        return writeJson(metadata?.filterKeys { it != "reactions" && it != "emojis" && it != "files" } ?: emptyMap<String, Any?>())
+    }
+
+    /**
+     * JSON stored in the props column, empty when the post has none
+     */
+    fun propsJson(): String {
+        return props?.let { writeJson(it) } ?: ""
+    }
+
+    /**
+     * The post as returned by the endpoint
+     */
+    fun toMap(): Map<String, Any?> {
+        val map = LinkedHashMap<String, Any?>()
+        for (name in fields) {
+            map[name] = if (name in nullFields) null else when (name) {
+                "id" -> id
+                "channel_id" -> channelId
+                "user_id" -> userId
+                "root_id" -> rootId
+                "original_id" -> originalId
+                "pending_post_id" -> pendingPostId
+                "prev_post_id" -> prevPostId
+                "type" -> type
+                "message" -> message
+                "message_source" -> messageSource
+                "create_at" -> createAt
+                "update_at" -> updateAt
+                "delete_at" -> deleteAt
+                "edit_at" -> editAt
+                "is_pinned" -> isPinned
+                "is_following" -> isFollowing
+                "reply_count" -> replyCount.toDouble()
+                "props" -> props ?: extras[name]
+                "metadata" -> metadata ?: extras[name]
+                "participants" -> participants ?: extras[name]
+                else -> extras[name]
+            }
+        }
+        return map
+    }
+
+    fun toReadableMap(): WritableMap {
+        return Arguments.makeNativeMap(toMap())
+    }
+}
+
+internal class PostList(
+        val order: List<String>,
+        val posts: Map<String, Post>,
+        val prevPostId: String?,
+        val nextPostId: String?
+) {
+    /**
+     * Builds the same map the posts endpoint returns, only needed when the data is handed over to JS
+     */
+    fun toReadableMap(): ReadableMap {
+        val map = Arguments.createMap()
+        val orderArray = Arguments.createArray()
+        order.forEach { orderArray.pushString(it) }
+        map.putArray("order", orderArray)
+
+        val postsMap = Arguments.createMap()
+        posts.forEach { (id, post) -> postsMap.putMap(id, post.toReadableMap()) }
+        map.putMap("posts", postsMap)
+
+        prevPostId?.let { map.putString("prev_post_id", it) }
+        nextPostId?.let { map.putString("next_post_id", it) }
+        return map
+    }
+
+    companion object {
+        fun parse(source: Reader): PostList {
+            val order = ArrayList<String>()
+            val posts = LinkedHashMap<String, Post>()
+            var prevPostId: String? = null
+            var nextPostId: String? = null
+
+            JsonReader(source).use { reader ->
+                reader.beginObject()
+                while (reader.hasNext()) {
+                    when (reader.nextName()) {
+                        "order" -> {
+                            reader.beginArray()
+                            while (reader.hasNext()) {
+                                order.add(reader.nextString())
+                            }
+                            reader.endArray()
+                        }
+                        "posts" -> {
+                            reader.beginObject()
+                            while (reader.hasNext()) {
+                                val key = reader.nextName()
+                                val post = readPost(reader)
+                                if (post.id.isNotEmpty()) {
+                                    posts[key] = post
+                                }
+                            }
+                            reader.endObject()
+                        }
+                        "prev_post_id" -> prevPostId = readString(reader)
+                        "next_post_id" -> nextPostId = readString(reader)
+                        else -> reader.skipValue()
+                    }
+                }
+                reader.endObject()
+            }
+
+            return PostList(order, posts, prevPostId, nextPostId)
+        }
+
+        private fun readPost(reader: JsonReader): Post {
+            val post = Post()
+            reader.beginObject()
+            while (reader.hasNext()) {
+                val name = reader.nextName()
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull()
+                    post.fields.add(name)
+                    post.nullFields.add(name)
+                    continue
+                }
+
+                when (name) {
+                    "id" -> post.id = reader.nextString()
+                    "channel_id" -> post.channelId = reader.nextString()
+                    "user_id" -> post.userId = reader.nextString()
+                    "root_id" -> post.rootId = reader.nextString()
+                    "original_id" -> post.originalId = reader.nextString()
+                    "pending_post_id" -> post.pendingPostId = reader.nextString()
+                    "prev_post_id" -> post.prevPostId = reader.nextString()
+                    "type" -> post.type = reader.nextString()
+                    "message" -> post.message = reader.nextString()
+                    "message_source" -> post.messageSource = reader.nextString()
+                    "create_at" -> post.createAt = reader.nextDouble()
+                    "update_at" -> post.updateAt = reader.nextDouble()
+                    "delete_at" -> post.deleteAt = reader.nextDouble()
+                    "edit_at" -> post.editAt = reader.nextDouble()
+                    "is_pinned" -> post.isPinned = reader.nextBoolean()
+                    "is_following" -> post.isFollowing = reader.nextBoolean()
+                    "reply_count" -> post.replyCount = reader.nextDouble().toInt()
+                    "metadata" -> readMetadata(reader, post)
+                    "props" -> {
+                        val value = readValue(reader)
+                        if (value is Map<*, *>) {
+                            @Suppress("UNCHECKED_CAST")
+                            post.props = value as Map<String, Any?>
+                        } else {
+                            post.extras[name] = value
+                        }
+                    }
+                    "participants" -> {
+                        val value = readValue(reader)
+                        if (value is List<*>) {
+                            post.participants = value
+                        } else {
+                            post.extras[name] = value
+                        }
+                    }
+                    else -> post.extras[name] = readValue(reader)
+                }
+                post.fields.add(name)
+            }
+            reader.endObject()
+            return post
+        }
+
+        /**
+         * Reads the metadata as is for the map handed to JS, typing the reactions, files and emojis on the way
+         */
+        private fun readMetadata(reader: JsonReader, post: Post) {
+            val metadata = LinkedHashMap<String, Any?>()
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                post.extras["metadata"] = readValue(reader)
+                return
+            }
+
+            reader.beginObject()
+            while (reader.hasNext()) {
+                val name = reader.nextName()
+                val value = readValue(reader)
+                metadata[name] = value
+                when (name) {
+                    "reactions" -> post.reactions = readList(value, ::toReaction)
+                    "files" -> post.files = readList(value, ::toFileInfo)
+                    "emojis" -> post.emojis = readList(value, ::toCustomEmoji)
+                }
+            }
+            reader.endObject()
+            post.metadata = metadata
+        }
+
+        private fun <T> readList(value: Any?, transform: (Map<*, *>) -> T?): List<T> {
+            val items = value as? List<*> ?: return emptyList()
+            val list = ArrayList<T>(items.size)
+            for (item in items) {
+                (item as? Map<*, *>)?.let { map ->
+                    try {
+                        transform(map)?.let { list.add(it) }
+                    } catch (e: Exception) {
+                        e.printStackTrace()
+                    }
+                }
+            }
+            return list
+        }
+
+        private fun toReaction(map: Map<*, *>): Reaction {
+            return Reaction(
+                    map["user_id"] as String,
+                    map["post_id"] as String,
+                    map["emoji_name"] as String,
+                    map["create_at"] as Double
+            )
+        }
+
+        private fun toFileInfo(map: Map<*, *>): FileInfo {
+            return FileInfo(
+                    map["id"] as String,
+                    map["post_id"] as String,
+                    map["name"] as String,
+                    map["extension"] as String,
+                    map["mime_type"] as String,
+                    map["size"] as? Double ?: 0.0,
+                    (map["width"] as? Double)?.toInt() ?: 0,
+                    (map["height"] as? Double)?.toInt() ?: 0,
+                    map["mini_preview"] as? String ?: ""
+            )
+        }
+
+        private fun toCustomEmoji(map: Map<*, *>): CustomEmoji {
+            return CustomEmoji(map["id"] as String, map["name"] as String)
+        }
+
+        private fun readString(reader: JsonReader): String? {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull()
+                return null
+            }
+            return reader.nextString()
+        }
+    }
+}
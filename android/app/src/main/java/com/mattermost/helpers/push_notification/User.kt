@@ -2,9 +2,10 @@ package com.mattermost.helpers.push_notification
 
 import com.facebook.react.bridge.Arguments
 import com.facebook.react.bridge.ReadableArray
-import com.facebook.react.bridge.ReadableMap
 import com.mattermost.helpers.PushNotificationDataRunnable
 import com.mattermost.helpers.ReadableArrayUtils
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 
 internal suspend fun PushNotificationDataRunnable.Companion.fetchUsersById(serverUrl: String, userIds: ReadableArray): ReadableArray? {
     return try {
@@ -32,30 +33,51 @@ internal suspend fun PushNotificationDataRunnable.Companion.fetchUsersByUsername
     }
 }
 
-internal suspend fun PushNotificationDataRunnable.Companion.fetchNeededUsers(serverUrl: String, loadedUsers: ReadableArray?, data: ReadableMap?): ArrayList<Any> {
+/**
+ * Users needed to display the posts. The posts are fetched concurrently with the channel profiles, so the users
+ * already loaded with the channel are neither fetched again nor added twice from the thread participants.
+ */
+internal suspend fun PushNotificationDataRunnable.Companion.fetchNeededUsers(serverUrl: String, loadedUsers: ReadableArray?, data: PostsResult?): ArrayList<Any> = coroutineScope {
     val userList = ArrayList<Any>()
-    loadedUsers?.let { PushNotificationDataRunnable.addUsersToList(it, userList) }
-    data?.getArray("userIdsToLoad")?.let { ids ->
-        if (ids.size() > 0) {
-            val result = fetchUsersById(serverUrl, ids)
-            result?.let { PushNotificationDataRunnable.addUsersToList(it, userList) }
-        }
-    }
+    val addedUserIds = HashSet<String>()
+    val addedUsernames = HashSet<String>()
+    loadedUsers?.let { PushNotificationDataRunnable.addUsersToList(it, userList, addedUserIds, addedUsernames) }
 
-    data?.getArray("usernamesToLoad")?.let { ids ->
-        if (ids.size() > 0) {
-            val result = fetchUsersByUsernames(serverUrl, ids)
-            result?.let { PushNotificationDataRunnable.addUsersToList(it, userList) }
-        }
+    // The users by id and by username do not depend on each other
+    val usersById = data?.userIdsToLoad?.filterNot { addedUserIds.contains(it) }?.takeIf { it.isNotEmpty() }?.let { userIds ->
+        val ids = Arguments.createArray()
+        userIds.forEach { ids.pushString(it) }
+        async { fetchUsersById(serverUrl, ids) }
+    }
+    val usersByUsername = data?.usernamesToLoad?.filterNot { addedUsernames.contains(it) }?.takeIf { it.isNotEmpty() }?.let { usernames ->
+        val names = Arguments.createArray()
+        usernames.forEach { names.pushString(it) }
+        async { fetchUsersByUsernames(serverUrl, names) }
     }
 
-    data?.getArray("usersFromThreads")?.let { PushNotificationDataRunnable.addUsersToList(it, userList) }
+    usersById?.await()?.let { PushNotificationDataRunnable.addUsersToList(it, userList, addedUserIds, addedUsernames) }
+    usersByUsername?.await()?.let { PushNotificationDataRunnable.addUsersToList(it, userList, addedUserIds, addedUsernames) }
+    data?.usersFromThreads?.let { PushNotificationDataRunnable.addUsersToList(it, userList, addedUserIds, addedUsernames) }
 
-    return userList
+    userList
 }
 
-internal fun PushNotificationDataRunnable.Companion.addUsersToList(users: ReadableArray, list: ArrayList<Any>) {
+/**
+ * Adds the users not added yet, as tracked by [addedUserIds] and [addedUsernames]
+ */
+internal fun PushNotificationDataRunnable.Companion.addUsersToList(
+        users: ReadableArray, list: ArrayList<Any>,
+        addedUserIds: MutableSet<String>, addedUsernames: MutableSet<String>
+) {
     for (i in 0 until users.size()) {
-        users.getMap(i)?.let { list.add(it) }
+        users.getMap(i)?.let { user ->
+            val id = if (user.hasKey("id")) user.getString("id") else null
+            if (id == null || addedUserIds.add(id)) {
+                if (user.hasKey("username")) {
+                    user.getString("username")?.let { addedUsernames.add(it) }
+                }
+                list.add(user)
+            }
+        }
     }
 }
@@ -1,28 +1,19 @@
 package com.mattermost.ikstorage
 
 import android.content.Context
-import androidx.security.crypto.EncryptedSharedPreferences
-import androidx.security.crypto.MasterKey
 import com.facebook.react.bridge.Promise
 import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
+import com.mattermost.helpers.Credentials
+import com.mattermost.helpers.DatabaseHelper
+import com.mattermost.helpers.ReplyOutbox
 
 class IkStorageModule(reactContext: ReactApplicationContext) :
     ReactContextBaseJavaModule(reactContext) {
 
     private val prefs by lazy {
-        val masterKey = MasterKey.Builder(reactContext)
-            .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-            .build()
-
-        EncryptedSharedPreferences.create(
-            reactContext,
-            "ik_secure_prefs",
-            masterKey,
-            EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-            EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-        )
+        Credentials.getSecurePreferences(reactContext)
     }
 
     override fun getName(): String = "IkStorage"
@@ -31,12 +22,26 @@ class IkStorageModule(reactContext: ReactApplicationContext) :
     fun setItem(key: String, value: String, promise: Promise) {
         try {
             prefs.edit().putString(key, value).apply()
+            Credentials.invalidate(key)
+            // The replies refused while the session was expired can be sent with the new token
+            ReplyOutbox.resume(reactApplicationContext, key)
             promise.resolve(true)
         } catch (e: Exception) {
             promise.reject("SET_ERROR", e)
         }
     }
 
+    @ReactMethod
+    fun removeItem(key: String, promise: Promise) {
+        try {
+            prefs.edit().remove(key).apply()
+            Credentials.invalidate(key)
+            promise.resolve(true)
+        } catch (e: Exception) {
+            promise.reject("REMOVE_ERROR", e)
+        }
+    }
+
     @ReactMethod
     fun getItem(key: String, promise: Promise) {
         try {
@@ -46,4 +51,18 @@ class IkStorageModule(reactContext: ReactApplicationContext) :
             promise.reject("GET_ERROR", e)
         }
     }
+
+    /**
+     * Resolves once the databases of the servers removed or logged out are closed
+     */
+    @ReactMethod
+    fun refreshServers(promise: Promise) {
+        val helper = DatabaseHelper.instance
+        if (helper == null) {
+            promise.resolve(true)
+            return
+        }
+        helper.init(reactApplicationContext)
+        helper.refreshServers(reactApplicationContext) { promise.resolve(true) }
+    }
 }
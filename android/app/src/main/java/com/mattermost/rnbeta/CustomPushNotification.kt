@@ -1,5 +1,6 @@
 package com.mattermost.rnbeta
 
+import android.app.Notification
 import android.app.PendingIntent
 import android.content.Context
 import android.content.Intent
@@ -10,14 +11,22 @@ import com.mattermost.call.CallActivity
 import com.mattermost.helpers.CustomPushNotificationHelper
 import com.mattermost.helpers.DatabaseHelper
 import com.mattermost.helpers.Network
+import com.mattermost.helpers.PushDeadline
 import com.mattermost.helpers.PushNotificationDataHelper
+import com.mattermost.helpers.PushPersistenceWorker
+import com.mattermost.helpers.PushTrace
+import com.mattermost.helpers.traced
+import com.mattermost.helpers.withinDeadline
 import com.mattermost.helpers.database_extension.getServerUrlForIdentifier
 import com.mattermost.notification.NotificationUtils
 import com.mattermost.notification.NotificationUtils.NOTIFICATION_TYPE_CANCEL_CALL_VALUE
 import com.mattermost.notification.NotificationUtils.NOTIFICATION_TYPE_JOINED_CALL_VALUE
 import com.mattermost.notification.NotificationUtils.createCallNotification
 import com.mattermost.notification.NotificationUtils.dismissCallNotification
+import com.mattermost.rnutils.helpers.DeliveredNotificationIndex
+import com.mattermost.rnutils.helpers.NotificationDispatcher
 import com.mattermost.rnutils.helpers.NotificationHelper
+import com.mattermost.rnutils.helpers.PushTracer
 import com.mattermost.turbolog.TurboLog
 import com.wix.reactnativenotifications.Defs.NOTIFICATION_RECEIVED_EVENT_NAME
 import com.wix.reactnativenotifications.core.AppLaunchHelper
@@ -27,7 +36,12 @@ import com.wix.reactnativenotifications.core.NotificationIntentAdapter
 import com.wix.reactnativenotifications.core.notification.PushNotification
 import kotlinx.coroutines.DelicateCoroutinesApi
 import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.coroutineContext
+import kotlin.coroutines.resume
 
 class CustomPushNotification(
     val context: Context,
@@ -37,6 +51,8 @@ class CustomPushNotification(
     jsIoHelper: JsIOHelper
 ) : PushNotification(context, bundle, appLifecycleFacade, appLaunchHelper, jsIoHelper) {
     private val dataHelper = PushNotificationDataHelper(context)
+    // Read by getNotificationBuilder while the first phase of a message notification is built
+    private var cachedAvatarsOnly = false
 
     init {
         try {
@@ -63,9 +79,12 @@ class CustomPushNotification(
             initialData.getString(NotificationUtils.NOTIFICATION_ID_LOADED_KEY) == "true"
         val notificationId = NotificationHelper.getNotificationId(initialData)
         val serverUrl = addServerUrlToBundle(initialData)
+        val trace = PushTrace.fromBundle(initialData, serverUrl, type)
         Network.init(mContext)
+        // Opens the connection while the database lookups and the signature verification run
+        Network.prewarm(serverUrl)
 
-        GlobalScope.launch {
+        GlobalScope.launch(trace + PushDeadline()) {
             try {
                 handlePushNotificationInCoroutine(
                     serverId, serverUrl, type, channelId, channelName, postId,
@@ -73,6 +92,9 @@ class CustomPushNotification(
                 )
             } catch (e: Exception) {
                 e.printStackTrace()
+            } finally {
+                trace.finish("total")
+                PushTracer.flush(context)
             }
         }
     }
@@ -91,33 +113,53 @@ class CustomPushNotification(
         isIdLoaded: Boolean,
         signature: String?
     ) {
-        if (ackId != null && serverUrl != null) {
-            val response = ReceiptDelivery.send(ackId, serverUrl, postId, type, isIdLoaded)
-            if (isIdLoaded && response != null) {
-                val current = mNotificationProps.asBundle()
-                if (!current.containsKey(NotificationUtils.SERVER_URL_KEY)) {
-                    response.putString(NotificationUtils.SERVER_URL_KEY, serverUrl)
+        coroutineScope {
+            // The ACK goes out concurrently with the signature verification and the data fetch,
+            // it is only waited for when the push needs the id-loaded payload it returns
+            val receipt = if (ackId != null && serverUrl != null) {
+                async { traced("receipt") { sendReceipt(ackId, serverUrl, postId, type, isIdLoaded) } }
+            } else {
+                null
+            }
+
+            val verified = traced("verify_signature") {
+                CustomPushNotificationHelper.verifySignature(mContext, signature, serverUrl, ackId)
+            }
+            if (!verified) {
+                TurboLog.i("Mattermost Notifications Signature verification", "Notification skipped because we could not verify it.")
+                return@coroutineScope
+            }
+
+            if (isIdLoaded) {
+                receipt?.await()?.let { response ->
+                    val current = mNotificationProps.asBundle()
+                    if (!current.containsKey(NotificationUtils.SERVER_URL_KEY)) {
+                        response.putString(NotificationUtils.SERVER_URL_KEY, serverUrl)
+                    }
+                    current.putAll(response)
+                    mNotificationProps = createProps(current)
                 }
-                current.putAll(response)
-                mNotificationProps = createProps(current)
             }
-        }
 
-        if (!CustomPushNotificationHelper.verifySignature(mContext, signature, serverUrl, ackId)) {
-            TurboLog.i("Mattermost Notifications Signature verification", "Notification skipped because we could not verify it.")
-            return
+            finishProcessingNotification(
+                serverId,
+                serverUrl,
+                type,
+                channelId,
+                channelName,
+                notificationId,
+                conferenceId,
+                conferenceJWT,
+            )
         }
+    }
 
-        finishProcessingNotification(
-            serverId,
-            serverUrl,
-            type,
-            channelId,
-            channelName,
-            notificationId,
-            conferenceId,
-            conferenceJWT,
-        )
+    private suspend fun sendReceipt(ackId: String, serverUrl: String, postId: String?, type: String?, isIdLoaded: Boolean): Bundle? {
+        return suspendCancellableCoroutine { cont ->
+            ReceiptDelivery.send(ackId, serverUrl, postId, type, isIdLoaded) { response ->
+                cont.resume(response)
+            }
+        }
     }
 
     override fun onOpened() {
@@ -157,22 +199,45 @@ class CustomPushNotification(
                     if (!mAppLifecycleFacade.isAppVisible() || !currentActivityName.contains("MainActivity")) {
                         var createSummary = type == CustomPushNotificationHelper.PUSH_TYPE_MESSAGE
                         if (type == CustomPushNotificationHelper.PUSH_TYPE_MESSAGE) {
+                            var posted = false
                             channelId?.let {
                                 val notificationBundle = mNotificationProps.asBundle()
                                 serverUrl?.let {
-                                    val notificationResult = dataHelper.fetchAndStoreDataForPushNotification(notificationBundle, isReactInit)
-                                    notificationResult?.let { result ->
-                                        notificationBundle.putBundle("data", result)
-                                        mNotificationProps = createProps(notificationBundle)
-                                    }
                                     createSummary = NotificationHelper.addNotificationToPreferences(
                                         context,
                                         notificationId,
                                         notificationBundle
                                     )
+
+                                    // The payload has everything needed to show the notification, it is posted right away
+                                    // with the cached avatars and updated in place once the data and avatars are loaded
+                                    buildNotification(notificationId, createSummary, cachedAvatarsOnly = true)
+                                    coroutineContext[PushTrace]?.finish("first_notification")
+                                    posted = true
+
+                                    val notificationResult = traced("fetch_data") {
+                                        // Waiting on another push of the same server can take longer than the stages themselves
+                                        val onExpired = { if (!isReactInit) PushPersistenceWorker.enqueue(context, notificationBundle) }
+                                        withinDeadline("fetch_data", serverUrl, onExpired) {
+                                            dataHelper.fetchAndStoreDataForPushNotification(notificationBundle, isReactInit)
+                                        }
+                                    }
+                                    notificationResult?.let { result ->
+                                        notificationBundle.putBundle("data", result)
+                                        mNotificationProps = createProps(notificationBundle)
+                                    }
+
+                                    // The data is stored either way, only the update of a notification dismissed meanwhile is skipped
+                                    if (isNotificationActive(notificationId)) {
+                                        buildNotification(notificationId, false, update = true)
+                                    } else {
+                                        TurboLog.i("ReactNative", "Notification dismissed before its data was loaded, skipping the update")
+                                    }
                                 }
                             }
-                            buildNotification(notificationId, createSummary)
+                            if (!posted) {
+                                buildNotification(notificationId, createSummary)
+                            }
                         }
                     }
 
@@ -193,15 +258,34 @@ class CustomPushNotification(
         LocalBroadcastManager.getInstance(context).sendBroadcast(callEventIntent)
     }
 
-    private fun buildNotification(notificationId: Int, createSummary: Boolean) {
+    /**
+     * @param cachedAvatarsOnly do not wait on the network for the avatars that are not cached yet
+     * @param update the notification is already displayed, it is replaced without alerting the user again
+     */
+    private suspend fun buildNotification(notificationId: Int, createSummary: Boolean, cachedAvatarsOnly: Boolean = false, update: Boolean = false) {
         val pendingIntent =
             NotificationIntentAdapter.createPendingNotificationIntent(context, mNotificationProps)
-        val notification = buildNotification(pendingIntent)
-        if (createSummary) {
-            val summary = getNotificationSummaryBuilder(pendingIntent).build()
-            super.postNotification(summary, notificationId + 1)
+        val notification = traced("build_notification") {
+            this.cachedAvatarsOnly = cachedAvatarsOnly
+            try {
+                buildNotification(pendingIntent)
+            } finally {
+                this.cachedAvatarsOnly = false
+            }
+        }
+        if (update) {
+            notification.flags = notification.flags or Notification.FLAG_ONLY_ALERT_ONCE
+        }
+        traced("post_notification") {
+            val bundle = mNotificationProps.asBundle()
+            val notifications = ArrayList<Pair<Int, Notification>>()
+            if (createSummary) {
+                val summary = getNotificationSummaryBuilder(pendingIntent).build()
+                notifications.add(Pair(notificationId + 1, summary))
+            }
+            notifications.add(Pair(notificationId, notification))
+            NotificationDispatcher.post(context, NotificationDispatcher.groupKey(bundle), bundle, notifications)
         }
-        super.postNotification(notification, notificationId)
     }
 
     override fun getNotificationBuilder(intent: PendingIntent): NotificationCompat.Builder {
@@ -210,10 +294,19 @@ class CustomPushNotification(
             context,
             intent,
             bundle,
-            false
+            false,
+            cachedAvatarsOnly
         )
     }
 
+    /**
+     * Whether the notification is still displayed (or queued to be), without asking the system which lists it
+     * only some time after it was posted. Dismissing, opening or clearing it removes it from the index.
+     */
+    private fun isNotificationActive(notificationId: Int): Boolean {
+        return DeliveredNotificationIndex.isDisplayed(notificationId)
+    }
+
     private fun getNotificationSummaryBuilder(intent: PendingIntent): NotificationCompat.Builder {
         val bundle = mNotificationProps.asBundle()
         return CustomPushNotificationHelper.createNotificationBuilder(context, intent, bundle, true)
@@ -18,6 +18,9 @@ import com.facebook.react.modules.network.OkHttpClientProvider
 import com.facebook.react.ReactInstanceManager
 import com.facebook.soloader.SoLoader
 import com.mattermost.call.IkCallPackage
+import com.mattermost.helpers.Credentials
+import com.mattermost.helpers.Network
+import com.mattermost.helpers.PushNotificationCoalescer
 import com.mattermost.ikstorage.IkStoragePackage
 import com.oney.WebRTCModule.WebRTCModuleOptions
 
@@ -79,6 +82,9 @@ class MainApplication : NavigationApplication(), INotificationsApplication {
 
         TurboLog.i("ReactNative", "Cleaning temp cache " + tempFolder.absolutePath)
 
+        PushNotificationCoalescer.windowMs = resources.getInteger(R.integer.push_coalescing_window_ms).toLong()
+        Network.setPrewarmIdleTimeout(resources.getInteger(R.integer.push_prewarm_idle_timeout_ms).toLong())
+
         // Tells React Native to use our RCTOkHttpClientFactory which builds an OKHttpClient
         // with a cookie jar defined in APIClientModule and an interceptor to intercept all
         // requests that originate from React Native's OKHttpClient
@@ -107,6 +113,12 @@ class MainApplication : NavigationApplication(), INotificationsApplication {
         ApplicationLifecycleDispatcher.onConfigurationChanged(this, newConfig)
     }
 
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        // The tokens are read again from the encrypted preferences when needed
+        Credentials.clearCache()
+    }
+
     override fun getPushNotification(
         context: Context?,
         bundle: Bundle?,
@@ -2,23 +2,31 @@ package com.mattermost.rnbeta;
 
 import android.os.Bundle;
 
-import java.lang.System;
-import java.util.Objects;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import org.json.JSONObject;
+import java.lang.System;
 
 import com.facebook.react.bridge.Arguments;
 
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableMap;
 import com.mattermost.helpers.*;
 import com.mattermost.turbolog.TurboLog;
 
-import okhttp3.Response;
-
 public class ReceiptDelivery {
     private static final String[] ackKeys = new String[]{"post_id", "root_id", "category", "message", "team_id", "channel_id", "channel_name", "type", "sender_id", "sender_name", "version"};
 
-    public static Bundle send(final String ackId, final String serverUrl, final String postId, final String type, final boolean isIdLoaded) {
+    public interface Callback {
+        void onResult(@Nullable Bundle response);
+    }
+
+    /**
+     * Sends the ACK without blocking the caller, the callback receives the id-loaded payload (if any)
+     * or null when the request failed
+     */
+    public static void send(final String ackId, final String serverUrl, final String postId, final String type, final boolean isIdLoaded, final Callback callback) {
         TurboLog.Companion.i("ReactNative", String.format("Send receipt delivery ACK=%s TYPE=%s to URL=%s with ID-LOADED=%s", ackId, type, serverUrl, isIdLoaded));
         WritableMap options = Arguments.createMap();
         WritableMap headers = Arguments.createMap();
@@ -33,23 +41,40 @@ public class ReceiptDelivery {
         body.putBoolean("is_id_loaded", isIdLoaded);
         options.putMap("body", body);
 
-        try (Response response = Network.postSync(serverUrl, "api/v4/notifications/ack", options)) {
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JSONObject jsonResponse = new JSONObject(responseBody);
-            return parseAckResponse(jsonResponse);
+        try {
+            Network.post(serverUrl, "api/v4/notifications/ack", options, new ResolvePromise() {
+                @Override
+                public void resolve(@Nullable Object value) {
+                    ReadableMap response = (ReadableMap) value;
+                    ReadableMap data = response != null && response.hasKey("data") && response.getType("data") == ReadableType.Map ? response.getMap("data") : null;
+                    callback.onResult(data != null ? parseAckResponse(data) : null);
+                }
+
+                @Override
+                public void reject(@NonNull String code, @Nullable String message) {
+                    TurboLog.Companion.e("ReactNative", "Send receipt delivery failed " + message);
+                    callback.onResult(null);
+                }
+
+                @Override
+                public void reject(@NonNull Throwable throwable) {
+                    TurboLog.Companion.e("ReactNative", "Send receipt delivery failed " + throwable.getMessage());
+                    callback.onResult(null);
+                }
+            });
         } catch (Exception e) {
             TurboLog.Companion.e("ReactNative", "Send receipt delivery failed " + e.getMessage());
             e.printStackTrace();
-            return null;
+            callback.onResult(null);
         }
     }
 
-    public static Bundle parseAckResponse(JSONObject jsonResponse) {
+    public static Bundle parseAckResponse(ReadableMap response) {
         try {
             Bundle bundle = new Bundle();
             for (String key : ackKeys) {
-                if (jsonResponse.has(key)) {
-                    bundle.putString(key, jsonResponse.getString(key));
+                if (response.hasKey(key) && response.getType(key) == ReadableType.String) {
+                    bundle.putString(key, response.getString(key));
                 }
             }
             return bundle;
@@ -0,0 +1,132 @@
+package com.mattermost.helpers
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withTimeout
+import kotlinx.coroutines.yield
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class KeyedMutexTest {
+    private val mutex = KeyedMutex()
+
+    @Test
+    fun sameKeyIsSerialized() = runBlocking(Dispatchers.Default) {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        var count = 0
+
+        (0 until 20).map {
+            async {
+                mutex.withLock("server") {
+                    maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+                    val read = count
+                    yield()
+                    count = read + 1
+                    running.decrementAndGet()
+                }
+            }
+        }.awaitAll()
+
+        assertEquals(1, maxRunning.get())
+        assertEquals(20, count)
+    }
+
+    @Test
+    fun differentKeysRunInParallel(): Unit = runBlocking(Dispatchers.Default) {
+        val first = CompletableDeferred<Unit>()
+        val second = CompletableDeferred<Unit>()
+
+        // Each one waits for the other while holding its lock, this only completes if both are held at once
+        withTimeout(5_000) {
+            listOf(
+                    async { mutex.withLock("server-1") { first.complete(Unit); second.await() } },
+                    async { mutex.withLock("server-2") { second.complete(Unit); first.await() } }
+            ).awaitAll()
+        }
+    }
+
+    @Test
+    fun entriesAreReclaimedOnceIdle() = runBlocking(Dispatchers.Default) {
+        val released = CompletableDeferred<Unit>()
+        val holder = async { mutex.withLock("server-1") { released.await() } }
+        val waiter = async {
+            delay(50)
+            mutex.withLock("server-1") {}
+        }
+        (2..5).map { async { mutex.withLock("server-$it") {} } }.awaitAll()
+
+        assertEquals(1, mutex.size)
+        released.complete(Unit)
+        holder.await()
+        waiter.await()
+        assertEquals(0, mutex.size)
+    }
+
+    @Test
+    fun lockIsReleasedWhenTheActionThrows() = runBlocking(Dispatchers.Default) {
+        runCatching { mutex.withLock("server") { throw IllegalStateException() } }
+
+        assertEquals(0, mutex.size)
+        assertEquals(1, withTimeout(1_000) { mutex.withLock("server") { 1 } })
+    }
+
+    @Test
+    fun concurrentPushesForSeveralServers() = runBlocking(Dispatchers.Default) {
+        val global = Mutex()
+        val serialized = stress("global mutex") { _, action -> global.withLock { action() } }
+        val keyed = stress("keyed mutex") { server, action -> mutex.withLock(server) { action() } }
+
+        assertEquals(1, serialized)
+        assertTrue("$keyed servers at once", keyed > 1)
+        assertEquals(0, mutex.size)
+    }
+
+    /**
+     * Runs [PUSHES_PER_SERVER] pushes for each of [SERVERS] servers at once, each one holding its lock for about
+     * as long as a push writing its database, and prints the throughput.
+     * Returns the highest number of servers processed at once.
+     */
+    private suspend fun stress(name: String, lock: suspend (String, suspend () -> Unit) -> Unit): Int {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val stored = IntArray(SERVERS)
+
+        val start = System.nanoTime()
+        coroutineScope {
+            (0 until SERVERS * PUSHES_PER_SERVER).map { push ->
+                val server = push % SERVERS
+                async {
+                    lock("https://server-$server.example.com") {
+                        maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+                        val read = stored[server]
+                        delay(PUSH_MS)
+                        stored[server] = read + 1
+                        running.decrementAndGet()
+                    }
+                }
+            }.awaitAll()
+        }
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000
+
+        // Pushes of the same server never overlap, none of them is lost
+        stored.forEach { assertEquals(PUSHES_PER_SERVER, it) }
+        println("$name: ${SERVERS * PUSHES_PER_SERVER} pushes in ${elapsedMs}ms, ${SERVERS * PUSHES_PER_SERVER * 1_000 / elapsedMs.coerceAtLeast(1)} pushes/s")
+        return maxRunning.get()
+    }
+
+    companion object {
+        private const val SERVERS = 4
+        private const val PUSHES_PER_SERVER = 25
+        private const val PUSH_MS = 10L
+    }
+}
@@ -0,0 +1,182 @@
+package com.mattermost.helpers
+
+import com.facebook.react.bridge.Promise
+import com.facebook.react.bridge.WritableMap
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.InterruptedIOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+class SingleFlightTest {
+    private lateinit var server: MockWebServer
+    private val client = OkHttpClient()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun execute(path: String): Response {
+        return client.newCall(Request.Builder().url(server.url(path)).build()).execute()
+    }
+
+    @Test
+    fun concurrentCallersShareOneRequest() {
+        server.enqueue(MockResponse().setBody("shared").setBodyDelay(300, TimeUnit.MILLISECONDS))
+        val singleFlight = SingleFlight()
+        val executor = Executors.newFixedThreadPool(5)
+        val start = CountDownLatch(1)
+
+        val results = (0 until 5).map {
+            executor.submit<String> {
+                start.await()
+                singleFlight.getSync("key") { execute("/api/v4/users/me") }.use { it.body!!.string() }
+            }
+        }
+        start.countDown()
+
+        results.forEach { assertEquals("shared", it.get(5, TimeUnit.SECONDS)) }
+        assertEquals(1, server.requestCount)
+        assertEquals(1, singleFlight.executedCount)
+        assertEquals(4, singleFlight.deduplicatedCount)
+        executor.shutdown()
+    }
+
+    @Test
+    fun sequentialCallersRunTheirOwnRequest() {
+        server.enqueue(MockResponse().setBody("first"))
+        server.enqueue(MockResponse().setBody("second"))
+        val singleFlight = SingleFlight()
+
+        val first = singleFlight.getSync("key") { execute("/first") }.use { it.body!!.string() }
+        val second = singleFlight.getSync("key") { execute("/second") }.use { it.body!!.string() }
+
+        assertEquals("first", first)
+        assertEquals("second", second)
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    fun failureIsSharedWithTheCallersWaiting() {
+        val singleFlight = SingleFlight()
+        val executor = Executors.newFixedThreadPool(2)
+        val leaderStarted = CountDownLatch(1)
+        val release = CountDownLatch(1)
+
+        val leader = executor.submit<Response> {
+            singleFlight.getSync("key") {
+                leaderStarted.countDown()
+                release.await()
+                throw IllegalStateException("refused")
+            }
+        }
+        leaderStarted.await()
+        val follower = executor.submit<Response> { singleFlight.getSync("key") { execute("/follower") } }
+        waitForDeduplicated(singleFlight, 1)
+        release.countDown()
+
+        assertEquals(IllegalStateException::class.java, causeOf(leader).javaClass)
+        assertEquals(IllegalStateException::class.java, causeOf(follower).javaClass)
+        assertEquals(0, server.requestCount)
+        executor.shutdown()
+    }
+
+    @Test
+    fun interruptedLeaderLetsTheFollowerRunTheRequest() {
+        server.enqueue(MockResponse().setBody("follower"))
+        val singleFlight = SingleFlight()
+        val executor = Executors.newFixedThreadPool(2)
+        val leaderStarted = CountDownLatch(1)
+        val release = CountDownLatch(1)
+
+        val leader = executor.submit<Response> {
+            singleFlight.getSync("key") {
+                leaderStarted.countDown()
+                release.await()
+                throw InterruptedIOException("interrupted")
+            }
+        }
+        leaderStarted.await()
+        val follower = executor.submit<String> {
+            singleFlight.getSync("key") { execute("/follower") }.use { it.body!!.string() }
+        }
+        waitForDeduplicated(singleFlight, 1)
+        release.countDown()
+
+        assertEquals(InterruptedIOException::class.java, causeOf(leader).javaClass)
+        assertEquals("follower", follower.get(5, TimeUnit.SECONDS))
+        assertEquals(1, server.requestCount)
+        executor.shutdown()
+    }
+
+    @Test
+    fun asyncCallersShareOneRequestAndTheFirstIsResolvedLast() {
+        val singleFlight = SingleFlight()
+        val resolved = ArrayList<String>()
+        var executions = 0
+        var pending: Promise? = null
+
+        for (name in listOf("first", "second", "third")) {
+            singleFlight.get("key", RecordingPromise(name, resolved)) { promise ->
+                executions++
+                pending = promise
+            }
+        }
+        pending!!.resolve("value")
+
+        assertEquals(1, executions)
+        assertEquals(listOf("third", "second", "first"), resolved)
+        assertEquals(2, singleFlight.deduplicatedCount)
+    }
+
+    private fun waitForDeduplicated(singleFlight: SingleFlight, count: Long) {
+        val deadline = System.currentTimeMillis() + 5_000
+        while (singleFlight.deduplicatedCount < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        // Leaves the follower the time to block on the shared request
+        Thread.sleep(50)
+    }
+
+    private fun causeOf(future: Future<*>): Throwable {
+        try {
+            future.get(5, TimeUnit.SECONDS)
+        } catch (e: java.util.concurrent.ExecutionException) {
+            return e.cause!!
+        }
+        throw AssertionError("The call should have failed")
+    }
+
+    private class RecordingPromise(private val name: String, private val resolved: MutableList<String>) : Promise {
+        override fun resolve(value: Any?) {
+            resolved.add(name)
+        }
+
+        override fun reject(code: String, message: String?) {}
+        override fun reject(code: String, throwable: Throwable?) {}
+        override fun reject(code: String, message: String?, throwable: Throwable?) {}
+        override fun reject(throwable: Throwable) {}
+        override fun reject(throwable: Throwable, userInfo: WritableMap) {}
+        override fun reject(code: String, userInfo: WritableMap) {}
+        override fun reject(code: String, throwable: Throwable?, userInfo: WritableMap) {}
+        override fun reject(code: String, message: String?, userInfo: WritableMap) {}
+        override fun reject(code: String?, message: String?, throwable: Throwable?, userInfo: WritableMap?) {}
+        override fun reject(message: String) {}
+    }
+}
@@ -0,0 +1,94 @@
+package com.mattermost.helpers.push_notification
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * Users needed by a page of posts, looked up as they used to be (the mention regex and list lookups)
+ * and with [MentionScanner] and sets. The timings are printed, only the results are compared.
+ */
+class MentionScanBenchmarkTest {
+    private class Message(val userId: String, val text: String)
+
+    private val regex = Regex("""\B@(([a-z\d-._]*[a-z\d_])[.-]*)""", setOf(RegexOption.IGNORE_CASE))
+    private val specialMentions = listOf("all", "here", "channel")
+    private val currentUserId = "user-0"
+    private val currentUsername = "username-0"
+
+    private val messages = Random(42).let { random ->
+        (0 until POSTS).map {
+            val author = random.nextInt(AUTHORS)
+            val text = buildString {
+                append("Message from $author")
+                repeat(random.nextInt(0, 4)) { append(" cc @username-${random.nextInt(AUTHORS)},") }
+                if (random.nextInt(20) == 0) {
+                    append(" @here")
+                }
+                append(" see email@example.com")
+            }
+            Message("user-$author", text)
+        }
+    }
+
+    private fun neededWithRegex(): Pair<List<String>, List<String>> {
+        val userIds = mutableListOf<String>()
+        val usernames = mutableListOf<String>()
+        for (message in messages) {
+            if (message.userId != currentUserId && !userIds.contains(message.userId)) {
+                userIds.add(message.userId)
+            }
+            regex.findAll(message.text).forEach {
+                val username = it.value.removePrefix("@")
+                if (!usernames.contains(username) && currentUsername != username && !specialMentions.contains(username)) {
+                    usernames.add(username)
+                }
+            }
+        }
+        return Pair(userIds, usernames)
+    }
+
+    private fun neededWithScanner(): Pair<List<String>, List<String>> {
+        val userIds = LinkedHashSet<String>()
+        val usernames = LinkedHashSet<String>()
+        for (message in messages) {
+            if (message.userId != currentUserId) {
+                userIds.add(message.userId)
+            }
+            MentionScanner.forEachMention(message.text) { username ->
+                if (currentUsername != username && !specialMentions.contains(username)) {
+                    usernames.add(username)
+                }
+            }
+        }
+        return Pair(userIds.toList(), usernames.toList())
+    }
+
+    private fun medianNs(block: () -> Unit): Long {
+        repeat(WARMUP) { block() }
+        val durations = LongArray(ITERATIONS) {
+            val start = System.nanoTime()
+            block()
+            System.nanoTime() - start
+        }
+        durations.sort()
+        return durations[ITERATIONS / 2]
+    }
+
+    @Test
+    fun neededUsersOfAPageOfPosts() {
+        assertEquals(neededWithRegex(), neededWithScanner())
+
+        val regexNs = medianNs { neededWithRegex() }
+        val scannerNs = medianNs { neededWithScanner() }
+        println("needed users of $POSTS posts by $AUTHORS authors: regex and lists ${regexNs / 1_000}us, " +
+                "scanner and sets ${scannerNs / 1_000}us")
+    }
+
+    companion object {
+        private const val POSTS = 1_000
+        private const val AUTHORS = 300
+        private const val WARMUP = 20
+        private const val ITERATIONS = 50
+    }
+}
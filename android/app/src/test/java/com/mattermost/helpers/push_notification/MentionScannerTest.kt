@@ -0,0 +1,64 @@
+package com.mattermost.helpers.push_notification
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import kotlin.random.Random
+
+class MentionScannerTest {
+    // The mention regex the scanner replaces
+    private val regex = Regex("""\B@(([a-z\d-._]*[a-z\d_])[.-]*)""", setOf(RegexOption.IGNORE_CASE))
+
+    private fun scan(text: String): List<String> {
+        val mentions = ArrayList<String>()
+        MentionScanner.forEachMention(text) { mentions.add(it) }
+        return mentions
+    }
+
+    private fun match(text: String): List<String> {
+        return regex.findAll(text).map { it.value.removePrefix("@") }.toList()
+    }
+
+    @Test
+    fun findsTheSameMentionsAsTheRegex() {
+        val texts = listOf(
+            "",
+            "no mention",
+            "@",
+            "@@",
+            "@john",
+            "hello @john and @jane.doe!",
+            "@john.",
+            "@john.-",
+            "@.-",
+            "@.john",
+            "@-_",
+            "email@example.com",
+            "(@john)",
+            "@john@jane",
+            "@john @john",
+            "@JOHN_doe-42",
+            "_@john",
+            "@jöhn",
+            "line\n@john\t@jane",
+            "@all @here @channel",
+        )
+
+        for (text in texts) {
+            assertEquals("Mentions of \"$text\"", match(text), scan(text))
+        }
+    }
+
+    @Test
+    fun findsTheSameMentionsAsTheRegexInRandomTexts() {
+        // Non-ASCII letters and digits are left out, the JVM regex engines do not agree with the Android one on them
+        val alphabet = "aZz09_.-@ ,!\n"
+        val random = Random(42)
+
+        repeat(20_000) {
+            val text = buildString {
+                repeat(random.nextInt(0, 24)) { append(alphabet[random.nextInt(alphabet.length)]) }
+            }
+            assertEquals("Mentions of \"$text\"", match(text), scan(text))
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.mattermost.helpers.push_notification
+
+import com.mattermost.helpers.ReadableMapUtils
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.StringReader
+import java.lang.management.ManagementFactory
+
+/**
+ * A page of 200 posts read as it used to be, the whole response as a JSONObject converted to maps (the bridge
+ * maps built from them next are native and left out), and streamed into a [PostList].
+ * The time and the bytes allocated are printed, only the results are compared.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [34])
+class PostListBenchmarkTest {
+    private val response = postsResponse()
+
+    private fun readAsMaps(): Map<String, Any> {
+        return ReadableMapUtils.toMap(JSONObject(response))
+    }
+
+    private fun readAsPostList(): PostList {
+        return PostList.parse(StringReader(response))
+    }
+
+    private class Measure(val medianNs: Long, val allocatedBytes: Long?)
+
+    private fun measure(block: () -> Unit): Measure {
+        val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        repeat(WARMUP) { block() }
+
+        val allocatedBefore = threads?.getThreadAllocatedBytes(threadId)
+        val durations = LongArray(ITERATIONS) {
+            val start = System.nanoTime()
+            block()
+            System.nanoTime() - start
+        }
+        val allocated = if (threads != null && allocatedBefore != null) {
+            (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS
+        } else {
+            null
+        }
+        durations.sort()
+        return Measure(durations[ITERATIONS / 2], allocated)
+    }
+
+    @Test
+    fun readPageOfPosts() {
+        @Suppress("UNCHECKED_CAST")
+        val posts = readAsMaps()["posts"] as Map<String, Any>
+        val postList = readAsPostList()
+        assertEquals(posts.keys, postList.posts.keys)
+        assertEquals(POSTS * 2, postList.posts.values.sumOf { it.reactions.size })
+
+        val before = measure { readAsMaps() }
+        val after = measure { readAsPostList() }
+        println("$POSTS posts as JSONObject and maps: ${before.medianNs / 1_000}us ${before.allocatedBytes}B per read")
+        println("$POSTS posts as PostList: ${after.medianNs / 1_000}us ${after.allocatedBytes}B per read")
+    }
+
+    private fun postsResponse(): String {
+        val order = JSONArray()
+        val posts = JSONObject()
+        for (i in 0 until POSTS) {
+            val id = "post-$i"
+            val createAt = 1_700_000_000_000L + i
+            val metadata = JSONObject()
+                    .put("embeds", JSONArray().put(JSONObject().put("type", "opengraph").put("url", "https://example.com/$i")))
+                    .put("reactions", JSONArray()
+                            .put(JSONObject().put("user_id", "user-1").put("post_id", id).put("emoji_name", "smile").put("create_at", createAt))
+                            .put(JSONObject().put("user_id", "user-2").put("post_id", id).put("emoji_name", "+1").put("create_at", createAt)))
+                    .put("files", JSONArray().put(JSONObject()
+                            .put("id", "file-$i").put("post_id", id).put("name", "image-$i.png").put("extension", "png")
+                            .put("mime_type", "image/png").put("size", 2048).put("width", 640).put("height", 480)))
+            posts.put(id, JSONObject()
+                    .put("id", id)
+                    .put("channel_id", "channel-id")
+                    .put("user_id", "user-${i % 20}")
+                    .put("root_id", "")
+                    .put("type", "")
+                    .put("message", "Message number $i for @username-${i % 30}")
+                    .put("create_at", createAt)
+                    .put("update_at", createAt)
+                    .put("delete_at", 0)
+                    .put("edit_at", 0)
+                    .put("is_pinned", false)
+                    .put("reply_count", 0)
+                    .put("props", JSONObject().put("attachments", JSONArray().put(JSONObject().put("text", "attachment $i"))))
+                    .put("metadata", metadata))
+            order.put(id)
+        }
+        return JSONObject().put("order", order).put("posts", posts).toString()
+    }
+
+    companion object {
+        private const val POSTS = 200
+        private const val WARMUP = 10
+        private const val ITERATIONS = 30
+    }
+}
@@ -0,0 +1,133 @@
+package com.mattermost.helpers.push_notification
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.StringReader
+
+// android.util.JsonReader is only implemented on a device or with Robolectric
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [34])
+class PostListTest {
+    private val response = """
+        {
+          "order": ["post1", "post2"],
+          "posts": {
+            "post1": {
+              "id": "post1",
+              "channel_id": "channel1",
+              "user_id": "user1",
+              "root_id": "",
+              "message": "hello @john",
+              "create_at": 1700000000000,
+              "update_at": 1700000000500,
+              "delete_at": 0,
+              "is_pinned": false,
+              "reply_count": 2,
+              "hashtags": "#tag",
+              "props": {"attachments": [{"pretext": "@jane", "text": "hi"}], "from_bot": "true"},
+              "participants": [{"id": "user2", "username": "jane"}],
+              "metadata": {
+                "embeds": [{"type": "opengraph", "url": "https://example.com"}],
+                "reactions": [{"user_id": "user2", "post_id": "post1", "emoji_name": "smile", "create_at": 1700000000100}],
+                "files": [{"id": "file1", "post_id": "post1", "name": "a.png", "extension": "png", "mime_type": "image/png", "size": 10, "width": 4, "height": 3, "has_preview_image": true}],
+                "emojis": [{"id": "emoji1", "name": "party"}]
+              }
+            },
+            "post2": {
+              "id": "post2",
+              "channel_id": "channel1",
+              "user_id": "user2",
+              "message": "reply",
+              "create_at": 1700000001000,
+              "props": null,
+              "prev_post_id": null
+            },
+            "empty": {}
+          },
+          "prev_post_id": "post0",
+          "next_post_id": ""
+        }
+    """.trimIndent()
+
+    private fun parse() = PostList.parse(StringReader(response))
+
+    @Test
+    fun readsTheTopLevel() {
+        val postList = parse()
+
+        assertEquals(listOf("post1", "post2"), postList.order)
+        assertEquals(setOf("post1", "post2"), postList.posts.keys)
+        assertEquals("post0", postList.prevPostId)
+        assertEquals("", postList.nextPostId)
+    }
+
+    @Test
+    fun typesTheStoredFields() {
+        val post = parse().posts.getValue("post1")
+
+        assertEquals("channel1", post.channelId)
+        assertEquals("hello @john", post.message)
+        assertEquals(1700000000500.0, post.lastChangedAt, 0.0)
+        assertEquals(2, post.replyCount)
+
+        assertEquals("smile", post.reactions.single().emojiName)
+        val file = post.files.single()
+        assertEquals("file1", file.id)
+        assertEquals(4, file.width)
+        assertEquals(3, file.height)
+        assertEquals("party", post.emojis.single().name)
+    }
+
+    @Test
+    fun readsTheNestedObjectsAsPlainValues() {
+        val post = parse().posts.getValue("post1")
+
+        val attachment = (post.props?.get("attachments") as List<*>).single() as Map<*, *>
+        assertEquals("@jane", attachment["pretext"])
+        assertEquals("jane", (post.participants?.single() as Map<*, *>)["username"])
+        assertEquals("#tag", post.extras["hashtags"])
+    }
+
+    @Test
+    fun storesTheMetadataWithoutTheTypedLists() {
+        val post = parse().posts.getValue("post1")
+
+        assertEquals("""{"embeds":[{"type":"opengraph","url":"https://example.com"}]}""", post.metadataJson())
+        assertEquals("""{"attachments":[{"pretext":"@jane","text":"hi"}],"from_bot":"true"}""", post.propsJson())
+    }
+
+    @Test
+    fun keepsTheShapeOfTheResponse() {
+        val posts = parse().posts
+        val post1 = posts.getValue("post1").toMap()
+        val post2 = posts.getValue("post2").toMap()
+
+        assertEquals(
+            listOf(
+                "id", "channel_id", "user_id", "root_id", "message", "create_at", "update_at", "delete_at", "is_pinned",
+                "reply_count", "hashtags", "props", "participants", "metadata",
+            ),
+            post1.keys.toList()
+        )
+        // The metadata handed to JS is complete, the typed lists included with every field
+        val metadata = post1["metadata"] as Map<*, *>
+        assertEquals(setOf("embeds", "reactions", "files", "emojis"), metadata.keys)
+        assertEquals(true, ((metadata["files"] as List<*>).single() as Map<*, *>)["has_preview_image"])
+
+        // Missing fields are not added, null ones stay null
+        assertFalse(post2.containsKey("metadata"))
+        assertFalse(post2.containsKey("root_id"))
+        assertTrue(post2.containsKey("props"))
+        assertNull(post2["props"])
+        assertTrue(post2.containsKey("prev_post_id"))
+        assertNull(post2["prev_post_id"])
+        assertEquals("", posts.getValue("post2").propsJson())
+        assertEquals("{}", posts.getValue("post2").metadataJson())
+    }
+}
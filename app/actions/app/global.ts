@@ -4,7 +4,7 @@
 import {Tutorial} from '@constants';
 import {GLOBAL_IDENTIFIERS} from '@constants/database';
 import DatabaseManager from '@database/manager';
-import {getActiveServerUrl} from '@init/credentials';
+import {getActiveServerUrl, refreshNativeServerRegistry} from '@init/credentials';
 import {logError} from '@utils/log';
 
 export const storeGlobal = async (id: string, value: unknown, prepareRecordsOnly = false) => {
@@ -21,7 +21,11 @@ export const storeGlobal = async (id: string, value: unknown, prepareRecordsOnly
 };
 
 export const storeDeviceToken = async (token: string, prepareRecordsOnly = false) => {
-    return storeGlobal(GLOBAL_IDENTIFIERS.DEVICE_TOKEN, token, prepareRecordsOnly);
+    const result = await storeGlobal(GLOBAL_IDENTIFIERS.DEVICE_TOKEN, token, prepareRecordsOnly);
+    if (!prepareRecordsOnly) {
+        refreshNativeServerRegistry();
+    }
+    return result;
 };
 
 export const storeOnboardingViewedValue = async (value = true) => {
@@ -100,7 +100,10 @@ export const updateTeamThreadsAsRead = async (serverUrl: string, teamId: string)
         const data = await client.updateTeamThreadsAsRead('me', teamId);
 
         // Update locally
-        await markTeamThreadsAsRead(serverUrl, teamId);
+        const {models} = await markTeamThreadsAsRead(serverUrl, teamId);
+        if (models?.length) {
+            PushNotifications.removeNotificationsBatch(serverUrl, [], models.map((thread) => thread.id));
+        }
 
         return {data};
     } catch (error) {
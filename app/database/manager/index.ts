@@ -27,7 +27,7 @@ import ServerDataOperator from '@database/operator/server_data_operator';
 import {schema as appSchema} from '@database/schema/app';
 import {serverSchema} from '@database/schema/server';
 import {beforeUpgrade} from '@helpers/database/upgrade';
-import {removePreauthSecret} from '@init/credentials';
+import {refreshNativeServerRegistry, removePreauthSecret} from '@init/credentials';
 import {PlaybookRunModel, PlaybookChecklistModel, PlaybookChecklistItemModel, PlaybookRunPropertyFieldModel, PlaybookRunPropertyValueModel} from '@playbooks/database/models';
 import {getActiveServer, getServer, getServerByIdentifier} from '@queries/app/servers';
 import {logDebug, logError} from '@utils/log';
@@ -266,6 +266,7 @@ class DatabaseManagerSingleton {
                 } else if (identifier) {
                     await this.updateServerIdentifier(serverUrl, identifier, displayName);
                 }
+                refreshNativeServerRegistry();
             }
         } catch (e) {
             logError('Error adding server to App database', e);
@@ -284,6 +285,7 @@ class DatabaseManagerSingleton {
                     }
                 });
             });
+            refreshNativeServerRegistry();
         }
     };
 
@@ -395,6 +397,7 @@ class DatabaseManagerSingleton {
                     DeviceEventEmitter.emit(Events.ACTIVE_SERVER_CHANGED, {serverUrl, options});
                 }
             });
+            refreshNativeServerRegistry();
         }
     };
 
@@ -409,13 +412,16 @@ class DatabaseManagerSingleton {
         if (database) {
             const server = await getServer(serverUrl);
             if (server) {
-                database.write(async () => {
+                await database.write(async () => {
                     await server.update((record) => {
                         record.lastActiveAt = 0;
                         record.identifier = '';
                     });
                 });
 
+                // The native side must be done with the database before its files are deleted
+                await refreshNativeServerRegistry();
+
                 delete this.serverDatabases[serverUrl];
                 this.deleteServerDatabaseFiles(serverUrl);
             }
@@ -433,10 +439,13 @@ class DatabaseManagerSingleton {
         if (database) {
             const server = await getServer(serverUrl);
             if (server) {
-                database.write(async () => {
+                await database.write(async () => {
                     await server.destroyPermanently();
                 });
 
+                // The native side must be done with the database before its files are deleted
+                await refreshNativeServerRegistry();
+
                 delete this.serverDatabases[serverUrl];
                 this.deleteServerDatabaseFiles(serverUrl);
 
@@ -74,8 +74,29 @@ export const setServerCredentials = (serverUrl: string, token: string) => {
     }
 };
 
+// ik: the Android push handling keeps the servers and the device token of the app database in memory
+// Resolves once the native side closed the databases of the servers removed or logged out
+export const refreshNativeServerRegistry = async () => {
+    if (Platform.OS === 'android') {
+        try {
+            await IkStorage?.refreshServers?.();
+        } catch (e) {
+            logWarning('could not refresh the native server registry', e);
+        }
+    }
+};
+
 export const removeServerCredentials = async (serverUrl: string) => {
     await KeyChain.resetInternetCredentials({server: serverUrl});
+
+    // ik: also drop the token used by the Android push handling and Reply receiver
+    if (Platform.OS === 'android') {
+        try {
+            await IkStorage?.removeItem?.(serverUrl);
+        } catch (e) {
+            logWarning('could not remove credentials', e);
+        }
+    }
 };
 
 export const removePreauthSecret = async (serverUrl: string) => {
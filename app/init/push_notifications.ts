@@ -310,6 +310,10 @@ class PushNotificationsSingleton {
         RNUtils.removeChannelNotifications(serverUrl, channelId);
     };
 
+    removeNotificationsBatch = (serverUrl: string, channelIds: string[], threadIds: string[]) => {
+        RNUtils.removeNotificationsBatch(serverUrl, channelIds, threadIds);
+    };
+
     removeServerNotifications = (serverUrl: string) => {
         RNUtils.removeServerNotifications(serverUrl);
     };
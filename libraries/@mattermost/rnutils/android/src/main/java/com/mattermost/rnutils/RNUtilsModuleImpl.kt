@@ -13,6 +13,7 @@ import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReadableMap
 import com.facebook.react.bridge.WritableMap
 import com.mattermost.rnutils.helpers.Notifications
+import com.mattermost.rnutils.helpers.PushTracer
 import com.mattermost.rnutils.helpers.RealPathUtil
 import com.mattermost.rnutils.helpers.SaveDataTask
 import com.mattermost.rnutils.helpers.SplitView
@@ -123,6 +124,8 @@ class RNUtilsModuleImpl(private val reactContext: ReactApplicationContext): Life
                 }
             }
 
+            addPushTraces(zos)
+
             zos.close()
             fos.close()
             promise?.resolve(zipFile.absolutePath)
@@ -133,6 +136,23 @@ class RNUtilsModuleImpl(private val reactContext: ReactApplicationContext): Life
         }
     }
 
+    private fun addPushTraces(zos: java.util.zip.ZipOutputStream) {
+        try {
+            PushTracer.getTraceFiles(reactContext).forEach { file ->
+                zos.putNextEntry(java.util.zip.ZipEntry(file.name))
+                file.inputStream().use { it.copyTo(zos) }
+                zos.closeEntry()
+            }
+
+            zos.putNextEntry(java.util.zip.ZipEntry("push_latency_stats.tsv"))
+            zos.write(PushTracer.getStatsSummary(reactContext).toByteArray())
+            zos.closeEntry()
+        } catch (e: Exception) {
+            // The logs are still useful without the push timings
+            android.util.Log.e("RNUtils", "Error adding the push traces", e)
+        }
+    }
+
     private fun cleanupResources(
         zos: java.util.zip.ZipOutputStream?,
         fos: java.io.FileOutputStream?,
@@ -193,6 +213,31 @@ class RNUtilsModuleImpl(private val reactContext: ReactApplicationContext): Life
         return true
     }
 
+    fun getPushNotificationStats(promise: Promise?) {
+        try {
+            val stages = Arguments.createArray()
+            PushTracer.getStats(reactContext).forEach {
+                val stage = Arguments.createMap()
+                stage.putString("stage", it.stage)
+                stage.putInt("count", it.count)
+                stage.putDouble("p50", it.p50.toDouble())
+                stage.putDouble("p95", it.p95.toDouble())
+                stage.putDouble("p99", it.p99.toDouble())
+                stages.pushMap(stage)
+            }
+
+            val counters = Arguments.createMap()
+            PushTracer.getCounters().forEach { (name, value) -> counters.putDouble(name, value.toDouble()) }
+
+            val result = Arguments.createMap()
+            result.putArray("stages", stages)
+            result.putMap("counters", counters)
+            promise?.resolve(result)
+        } catch (e: Exception) {
+            promise?.reject("push_stats_error", e.message, e)
+        }
+    }
+
     fun getDeliveredNotifications(promise: Promise?) {
         Notifications.getDeliveredNotifications(promise)
     }
@@ -205,6 +250,10 @@ class RNUtilsModuleImpl(private val reactContext: ReactApplicationContext): Life
         serverUrl?.let { threadId?.let { it1 -> Notifications.removeThreadNotifications(it, it1) } }
     }
 
+    fun removeNotificationsBatch(serverUrl: String?, channelIds: List<String>, threadIds: List<String>) {
+        serverUrl?.let { Notifications.removeNotificationsBatch(it, channelIds, threadIds) }
+    }
+
     fun removeServerNotifications(serverUrl: String?) {
         serverUrl?.let { Notifications.removeServerNotifications(it) }
     }
@@ -0,0 +1,111 @@
+package com.mattermost.rnutils.helpers
+
+import android.content.Context
+import android.os.Bundle
+import android.os.SystemClock
+import android.service.notification.StatusBarNotification
+
+/**
+ * Message notifications currently displayed, by notification id, along with the server, channel and thread
+ * they belong to.
+ *
+ * The clear operations look the notifications up here and cancel them by id instead of fetching and scanning
+ * every active notification from the system. The index is updated when a notification is posted or cancelled
+ * (or queued by the [NotificationDispatcher]) and is only rebuilt from [NotificationHelper.getDeliveredNotifications]
+ * when it cannot be trusted: before its first use in the process, or when it holds notifications the system may
+ * have removed on its own.
+ */
+object DeliveredNotificationIndex {
+    class Entry(
+        val id: Int,
+        val serverUrl: String?,
+        val channelId: String?,
+        val rootId: String?,
+        val postId: String?,
+        val isCRTEnabled: Boolean,
+        val postedAt: Long = SystemClock.elapsedRealtime(),
+    ) {
+        val isThreadNotification: Boolean
+            get() = isCRTEnabled && !rootId.isNullOrEmpty()
+    }
+
+    // The system lists a notification some time after it was posted
+    private const val RECENTLY_POSTED_MS = 2_000L
+
+    private val entries = LinkedHashMap<Int, Entry>()
+    private var loaded = false
+
+    @Synchronized
+    fun posted(context: Context, notificationId: Int, notification: Bundle) {
+        ensureLoaded(context)
+        entries[notificationId] = entryOf(notificationId, notification)
+    }
+
+    @Synchronized
+    fun cancelled(notificationId: Int) {
+        entries.remove(notificationId)
+    }
+
+    /**
+     * Whether the notification was posted (or queued) and has not been cancelled, cleared or dismissed since
+     */
+    @Synchronized
+    fun isDisplayed(notificationId: Int): Boolean {
+        return entries.containsKey(notificationId)
+    }
+
+    /**
+     * Notifications matching [predicate], removed from the index as the caller is expected to cancel them
+     */
+    @Synchronized
+    fun take(context: Context, predicate: (Entry) -> Boolean): List<Entry> {
+        ensureLoaded(context)
+        val taken = entries.values.filter(predicate)
+        taken.forEach { entries.remove(it.id) }
+        return taken
+    }
+
+    @Synchronized
+    fun any(context: Context, predicate: (Entry) -> Boolean): Boolean {
+        ensureLoaded(context)
+        return entries.values.any(predicate)
+    }
+
+    /**
+     * Rebuilds the index from the notifications the system reports as displayed
+     */
+    @Synchronized
+    fun reconcile(notifications: Array<StatusBarNotification>) {
+        // Notifications queued by the NotificationDispatcher or posted just now may not be listed yet but can still be cleared
+        val now = SystemClock.elapsedRealtime()
+        entries.values.removeAll { now - it.postedAt > RECENTLY_POSTED_MS && !NotificationDispatcher.isPending(it.id) }
+        for (sbn in notifications) {
+            val extras = sbn.notification.extras ?: continue
+            if (extras.containsKey("channel_id") || extras.containsKey("server_url")) {
+                entries[sbn.id] = entryOf(sbn.id, extras)
+            }
+        }
+        loaded = true
+    }
+
+    fun reconcile(context: Context) {
+        reconcile(NotificationHelper.getDeliveredNotifications(context))
+    }
+
+    private fun ensureLoaded(context: Context) {
+        if (!loaded) {
+            reconcile(context)
+        }
+    }
+
+    private fun entryOf(notificationId: Int, notification: Bundle): Entry {
+        return Entry(
+            notificationId,
+            notification.getString("server_url"),
+            notification.getString("channel_id"),
+            notification.getString("root_id"),
+            notification.getString("post_id"),
+            notification.getString("is_crt_enabled") == "true",
+        )
+    }
+}
@@ -0,0 +1,159 @@
+package com.mattermost.rnutils.helpers
+
+import android.annotation.SuppressLint
+import android.app.Notification
+import android.content.Context
+import android.os.Bundle
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import androidx.core.app.NotificationManagerCompat
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Posts the message notifications while keeping their updates under the rate the system accepts.
+ *
+ * The system silently drops the updates of an app posting too often, so a group (channel or thread) is
+ * posted to at most once per [GROUP_INTERVAL_MS] and the app at most once per [APP_INTERVAL_MS]. The updates
+ * coming in the meantime are queued by group and only the latest content of each notification is posted
+ * when the group is flushed. A notification cancelled while queued is never posted.
+ */
+object NotificationDispatcher {
+    const val GROUP_INTERVAL_MS = 1_000L
+    // The system accepts about 5 notification updates per second for an app
+    const val APP_INTERVAL_MS = 200L
+
+    private class Pending(val notification: Notification)
+
+    private val pending = HashMap<String, LinkedHashMap<Int, Pending>>()
+    private val groupOfPending = HashMap<Int, String>()
+    private val lastPostedAt = HashMap<String, Long>()
+    private var nextSlotAt = 0L
+
+    private val coalesced = AtomicLong(0)
+    private val dropped = AtomicLong(0)
+
+    init {
+        PushTracer.registerCounter("notification_updates_coalesced") { coalesced.get() }
+        PushTracer.registerCounter("notification_updates_dropped") { dropped.get() }
+    }
+
+    private val handler: Handler by lazy {
+        val thread = HandlerThread("NotificationDispatcher")
+        thread.start()
+        Handler(thread.looper)
+    }
+
+    /**
+     * Key of the group (channel, or thread when CRT is enabled) of the notification of [bundle]
+     */
+    fun groupKey(bundle: Bundle): String {
+        val rootId = bundle.getString("root_id")
+        val isCRTEnabled = bundle.getString("is_crt_enabled") == "true"
+        val groupId = if (isCRTEnabled && !rootId.isNullOrEmpty()) rootId else bundle.getString("channel_id")
+        return "${bundle.getString("server_url")}-$groupId"
+    }
+
+    /**
+     * Updates replaced by a more recent one of the same notification before being posted
+     */
+    fun coalescedCount(): Long = coalesced.get()
+
+    /**
+     * Updates never posted because their notification was cancelled while they were queued
+     */
+    fun droppedCount(): Long = dropped.get()
+
+    /**
+     * Posts the [notifications] of a group, by notification id, right away when the group and the app are under
+     * their rate, queues them otherwise. They are added to the [DeliveredNotificationIndex] either way so clearing
+     * them drops the queued update.
+     */
+    fun post(context: Context, groupKey: String, bundle: Bundle, notifications: List<Pair<Int, Notification>>) {
+        val appContext = context.applicationContext
+        // Indexed outside of the lock, the index looks up the pending notifications when it is rebuilt
+        for ((notificationId, _) in notifications) {
+            DeliveredNotificationIndex.posted(appContext, notificationId, bundle)
+        }
+
+        synchronized(this) {
+            val queued = pending[groupKey]
+            if (queued != null) {
+                for ((notificationId, notification) in notifications) {
+                    if (queued.put(notificationId, Pending(notification)) != null) {
+                        coalesced.incrementAndGet()
+                    }
+                    groupOfPending[notificationId] = groupKey
+                }
+                return
+            }
+
+            val now = SystemClock.elapsedRealtime()
+            val wait = maxOf((lastPostedAt[groupKey] ?: 0L) + GROUP_INTERVAL_MS, nextSlotAt) - now
+            if (wait <= 0) {
+                for ((notificationId, notification) in notifications) {
+                    notify(appContext, notificationId, notification)
+                }
+                markPosted(groupKey, now)
+                return
+            }
+
+            val group = LinkedHashMap<Int, Pending>()
+            for ((notificationId, notification) in notifications) {
+                group[notificationId] = Pending(notification)
+                groupOfPending[notificationId] = groupKey
+            }
+            pending[groupKey] = group
+            // The slot of the flush is reserved so the groups queued meanwhile are spread over the following ones
+            nextSlotAt = now + wait + APP_INTERVAL_MS
+            handler.postDelayed({ flush(appContext, groupKey) }, wait)
+        }
+    }
+
+    @Synchronized
+    fun isPending(notificationId: Int): Boolean {
+        return groupOfPending.containsKey(notificationId)
+    }
+
+    /**
+     * Cancels the notification, dropping its queued update if any
+     */
+    fun cancel(context: Context, notificationId: Int) {
+        synchronized(this) {
+            groupOfPending.remove(notificationId)?.let { groupKey ->
+                if (pending[groupKey]?.remove(notificationId) != null) {
+                    dropped.incrementAndGet()
+                }
+            }
+        }
+        DeliveredNotificationIndex.cancelled(notificationId)
+        NotificationManagerCompat.from(context).cancel(notificationId)
+    }
+
+    @Synchronized
+    private fun flush(context: Context, groupKey: String) {
+        val queued = pending.remove(groupKey) ?: return
+        for ((notificationId, update) in queued) {
+            groupOfPending.remove(notificationId)
+            notify(context, notificationId, update.notification)
+        }
+        markPosted(groupKey, SystemClock.elapsedRealtime())
+    }
+
+    private fun markPosted(groupKey: String, now: Long) {
+        lastPostedAt[groupKey] = now
+        nextSlotAt = maxOf(nextSlotAt, now + APP_INTERVAL_MS)
+        if (lastPostedAt.size > 64) {
+            lastPostedAt.entries.removeAll { now - it.value > GROUP_INTERVAL_MS }
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    private fun notify(context: Context, notificationId: Int, notification: Notification) {
+        try {
+            NotificationManagerCompat.from(context).notify(notificationId, notification)
+        } catch (e: Exception) {
+            e.printStackTrace()
+        }
+    }
+}
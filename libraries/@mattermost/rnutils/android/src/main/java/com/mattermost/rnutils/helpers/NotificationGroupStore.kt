@@ -0,0 +1,235 @@
+package com.mattermost.rnutils.helpers
+
+import android.content.ContentValues
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteOpenHelper
+import android.util.Log
+import org.json.JSONException
+import org.json.JSONObject
+import java.util.concurrent.Executors
+
+/**
+ * Notifications displayed by server and group (channel, or thread when CRT is enabled), the summary
+ * notification of a group being flagged.
+ *
+ * Every operation works on an in-memory copy and is written to a small SQLite table one row at a time
+ * on a background thread, instead of serializing every group of every server on each change. The copy is
+ * loaded on first use, importing the JSON map previously stored in the shared preferences.
+ */
+object NotificationGroupStore {
+    private const val TAG = "NotificationGroupStore"
+    private const val DATABASE_NAME = "notification_groups.db"
+    private const val DATABASE_VERSION = 1
+    private const val TABLE = "NotificationGroup"
+
+    private const val LEGACY_PREFERENCES = "PUSH_NOTIFICATIONS"
+    private const val LEGACY_KEY = "notificationsInGroup"
+
+    // server -> group -> notification id -> is summary
+    private var groups: HashMap<String, HashMap<String, LinkedHashMap<Int, Boolean>>>? = null
+    private var helper: Helper? = null
+    private val writer = Executors.newSingleThreadExecutor()
+
+    private class Helper(context: Context) : SQLiteOpenHelper(context, DATABASE_NAME, null, DATABASE_VERSION) {
+        override fun onCreate(db: SQLiteDatabase) {
+            db.execSQL(
+                "CREATE TABLE $TABLE (server_url TEXT NOT NULL, group_id TEXT NOT NULL, notification_id INTEGER NOT NULL, " +
+                        "is_summary INTEGER NOT NULL, PRIMARY KEY (server_url, group_id, notification_id))"
+            )
+        }
+
+        override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {}
+    }
+
+    /**
+     * Adds a notification to its group, along with the summary when it is the first one of the group.
+     * Returns whether the summary notification has to be created.
+     */
+    @Synchronized
+    fun add(context: Context, serverUrl: String?, groupId: String, notificationId: Int): Boolean {
+        val server = serverUrl ?: ""
+        val group = load(context).getOrPut(server) { HashMap() }.getOrPut(groupId) { LinkedHashMap() }
+        val createSummary = group.isEmpty()
+
+        group[notificationId] = false
+        persistInsert(server, groupId, notificationId, false)
+        if (createSummary) {
+            group[notificationId + 1] = true
+            persistInsert(server, groupId, notificationId + 1, true)
+        }
+
+        return createSummary
+    }
+
+    @Synchronized
+    fun isSummary(context: Context, serverUrl: String?, groupId: String, notificationId: Int): Boolean {
+        return load(context)[serverUrl ?: ""]?.get(groupId)?.get(notificationId) == true
+    }
+
+    @Synchronized
+    fun hasGroup(context: Context, serverUrl: String?, groupId: String): Boolean {
+        return load(context)[serverUrl ?: ""]?.containsKey(groupId) == true
+    }
+
+    @Synchronized
+    fun remove(context: Context, serverUrl: String?, groupId: String, notificationId: Int) {
+        val server = serverUrl ?: ""
+        val group = load(context)[server]?.get(groupId) ?: return
+        if (group.remove(notificationId) != null) {
+            persist { it.delete(TABLE, "server_url=? AND group_id=? AND notification_id=?", arrayOf(server, groupId, notificationId.toString())) }
+        }
+    }
+
+    @Synchronized
+    fun removeGroup(context: Context, serverUrl: String?, groupId: String) {
+        val server = serverUrl ?: ""
+        val servers = load(context)
+        if (servers[server]?.remove(groupId) != null) {
+            if (servers[server]?.isEmpty() == true) {
+                servers.remove(server)
+            }
+            persist { it.delete(TABLE, "server_url=? AND group_id=?", arrayOf(server, groupId)) }
+        }
+    }
+
+    /**
+     * Removes whole groups along with single notifications of other groups, given as group id to notification id,
+     * in a single write
+     */
+    @Synchronized
+    fun removeBatch(context: Context, serverUrl: String?, groupIds: Collection<String>, notifications: Collection<Pair<String, Int>>) {
+        val server = serverUrl ?: ""
+        val serverGroups = load(context)[server] ?: return
+        val removedGroups = groupIds.filter { serverGroups.remove(it) != null }
+        val removedNotifications = notifications.filter { (groupId, id) -> serverGroups[groupId]?.remove(id) != null }
+        if (serverGroups.isEmpty()) {
+            groups?.remove(server)
+        }
+        if (removedGroups.isEmpty() && removedNotifications.isEmpty()) {
+            return
+        }
+
+        persist { db ->
+            db.beginTransaction()
+            try {
+                for (groupId in removedGroups) {
+                    db.delete(TABLE, "server_url=? AND group_id=?", arrayOf(server, groupId))
+                }
+                for ((groupId, id) in removedNotifications) {
+                    db.delete(TABLE, "server_url=? AND group_id=? AND notification_id=?", arrayOf(server, groupId, id.toString()))
+                }
+                db.setTransactionSuccessful()
+            } finally {
+                db.endTransaction()
+            }
+        }
+    }
+
+    @Synchronized
+    fun removeServer(context: Context, serverUrl: String?) {
+        val server = serverUrl ?: ""
+        if (load(context).remove(server) != null) {
+            persist { it.delete(TABLE, "server_url=?", arrayOf(server)) }
+        }
+    }
+
+    @Synchronized
+    fun clear(context: Context) {
+        load(context).clear()
+        persist { it.delete(TABLE, null, null) }
+    }
+
+    private fun persistInsert(server: String, groupId: String, notificationId: Int, isSummary: Boolean) {
+        val values = ContentValues()
+        values.put("server_url", server)
+        values.put("group_id", groupId)
+        values.put("notification_id", notificationId)
+        values.put("is_summary", if (isSummary) 1 else 0)
+        persist { it.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE) }
+    }
+
+    private fun persist(write: (SQLiteDatabase) -> Unit) {
+        val helper = helper ?: return
+        writer.execute {
+            try {
+                write(helper.writableDatabase)
+            } catch (e: Exception) {
+                Log.e(TAG, "Could not store the notification groups", e)
+            }
+        }
+    }
+
+    private fun load(context: Context): HashMap<String, HashMap<String, LinkedHashMap<Int, Boolean>>> {
+        groups?.let { return it }
+
+        val loaded = HashMap<String, HashMap<String, LinkedHashMap<Int, Boolean>>>()
+        val appContext = context.applicationContext
+        val helper = Helper(appContext).also { helper = it }
+        try {
+            val db = helper.writableDatabase
+            db.rawQuery("SELECT server_url, group_id, notification_id, is_summary FROM $TABLE", null).use { cursor ->
+                while (cursor.moveToNext()) {
+                    loaded.getOrPut(cursor.getString(0)) { HashMap() }
+                        .getOrPut(cursor.getString(1)) { LinkedHashMap() }[cursor.getInt(2)] = cursor.getInt(3) == 1
+                }
+            }
+            migrateLegacyMap(appContext, db, loaded)
+        } catch (e: Exception) {
+            Log.e(TAG, "Could not load the notification groups", e)
+        }
+
+        groups = loaded
+        return loaded
+    }
+
+    /**
+     * Imports the { serverUrl: { groupId: { notificationId: isSummary } } } map of the shared preferences once
+     */
+    private fun migrateLegacyMap(
+        context: Context,
+        db: SQLiteDatabase,
+        loaded: HashMap<String, HashMap<String, LinkedHashMap<Int, Boolean>>>
+    ) {
+        val preferences = context.getSharedPreferences(LEGACY_PREFERENCES, Context.MODE_PRIVATE)
+        val jsonString = preferences.getString(LEGACY_KEY, null) ?: return
+
+        try {
+            val json = JSONObject(jsonString)
+            db.beginTransaction()
+            try {
+                for (server in json.keys()) {
+                    val serverGroups = json.optJSONObject(server) ?: continue
+                    for (groupId in serverGroups.keys()) {
+                        val notifications = serverGroups.optJSONObject(groupId) ?: continue
+                        val group = loaded.getOrPut(server) { HashMap() }.getOrPut(groupId) { LinkedHashMap() }
+                        for (id in notifications.keys()) {
+                            val notificationId = id.toIntOrNull() ?: continue
+                            val isSummary = notifications.optBoolean(id)
+                            group[notificationId] = isSummary
+
+                            val values = ContentValues()
+                            values.put("server_url", server)
+                            values.put("group_id", groupId)
+                            values.put("notification_id", notificationId)
+                            values.put("is_summary", if (isSummary) 1 else 0)
+                            db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE)
+                        }
+                    }
+                }
+                db.setTransactionSuccessful()
+            } finally {
+                db.endTransaction()
+            }
+        } catch (e: JSONException) {
+            // Could never be imported
+            Log.e(TAG, "Could not read the notification groups to migrate", e)
+        } catch (e: Exception) {
+            // Kept to be imported again on the next load
+            Log.e(TAG, "Could not migrate the notification groups", e)
+            return
+        }
+
+        preferences.edit().remove(LEGACY_KEY).apply()
+    }
+}
@@ -5,14 +5,9 @@ import android.content.Context
 import android.os.Bundle
 import android.service.notification.StatusBarNotification
 import android.text.TextUtils
-import androidx.core.app.NotificationManagerCompat
-import org.json.JSONException
-import org.json.JSONObject
 import androidx.core.content.edit
 
 object NotificationHelper {
-    private const val PUSH_NOTIFICATIONS: String = "PUSH_NOTIFICATIONS"
-    private const val NOTIFICATIONS_IN_GROUP: String = "notificationsInGroup"
     private const val VERSION_PREFERENCE = "VERSION_PREFERENCE"
     const val MESSAGE_NOTIFICATION_ID: Int = 435345
     private const val KEY_ROOT_ID = "root_id"
@@ -38,8 +33,7 @@ object NotificationHelper {
                     putString(PREF_VERSION, version)
                 }
 
-                val inputMap: Map<String?, JSONObject?> = HashMap()
-                saveMap(context, inputMap)
+                NotificationGroupStore.clear(context)
             }
         } catch (e: Exception) {
             e.printStackTrace()
@@ -67,41 +61,15 @@ object NotificationHelper {
 
     fun addNotificationToPreferences(context: Context, notificationId: Int, notification: Bundle): Boolean {
         try {
-            var createSummary = true
             val serverUrl = getServerUrl(notification)
             val channelId = getChannelId(notification)
             val rootId = getRootId(notification)
             val isCRTEnabled = isCRTEnabled(notification)
 
             val isThreadNotification = isCRTEnabled && !TextUtils.isEmpty(rootId)
-            val groupId = if (isThreadNotification) rootId else channelId
+            val groupId = (if (isThreadNotification) rootId else channelId) ?: return true
 
-            val notificationsPerServer = loadMap(context)
-            var notificationsInServer = notificationsPerServer[serverUrl]
-            if (notificationsInServer == null) {
-                notificationsInServer = JSONObject()
-            }
-
-            var notificationsInGroup = notificationsInServer.optJSONObject(groupId)
-            if (notificationsInGroup == null) {
-                notificationsInGroup = JSONObject()
-            }
-
-            if (notificationsInGroup.length() > 0) {
-                createSummary = false
-            }
-
-            notificationsInGroup.put(notificationId.toString(), false)
-
-            if (createSummary) {
-                // Add the summary notification id as well
-                notificationsInGroup.put((notificationId + 1).toString(), true)
-            }
-            groupId?.let { notificationsInServer.put(it, notificationsInGroup) }
-            notificationsPerServer[serverUrl] = notificationsInServer
-            saveMap(context, notificationsPerServer)
-
-            return createSummary
+            return NotificationGroupStore.add(context, serverUrl, groupId, notificationId)
         } catch (e: Exception) {
             e.printStackTrace()
             return false
@@ -115,129 +83,95 @@ object NotificationHelper {
         val rootId = getRootId(notification)
 
         val notificationId = getNotificationId(notification)
+        // Recorded first so a push still loading the data of this notification does not post it again
+        NotificationDispatcher.cancel(context, notificationId)
 
         if (!TextUtils.isEmpty(serverUrl) && !TextUtils.isEmpty(channelId)) {
             val isThreadNotification = isCRTEnabled && !TextUtils.isEmpty(rootId)
-            val notificationIdStr = notificationId.toString()
-            val groupId = if (isThreadNotification) rootId else channelId
-
-            val notificationsPerServer = loadMap(context)
-            val notificationsInServer = notificationsPerServer[serverUrl] ?: return
-
-            val notificationsInGroup = notificationsInServer.optJSONObject(groupId) ?: return
-            val isSummary = notificationsInGroup.optBoolean(notificationIdStr)
-            notificationsInGroup.remove(notificationIdStr)
-
-            val notificationManager = context.getSystemService(NotificationManager::class.java)
-            notificationManager.cancel(notificationId)
-            val statusNotifications = getDeliveredNotifications(context)
-            var hasMore = false
-
-            for (status in statusNotifications) {
-                val bundle = status.notification.extras
-                hasMore = if (isThreadNotification) {
-                    bundle.containsKey(KEY_ROOT_ID) && getRootId(bundle) == rootId
-                } else {
-                    bundle.containsKey(KEY_CHANNEL_ID) && getChannelId(bundle) == channelId
-                }
-                if (hasMore) break
+            val groupId = (if (isThreadNotification) rootId else channelId) ?: return
+
+            if (!NotificationGroupStore.hasGroup(context, serverUrl, groupId)) {
+                return
             }
+            val isSummary = NotificationGroupStore.isSummary(context, serverUrl, groupId, notificationId)
+            NotificationGroupStore.remove(context, serverUrl, groupId, notificationId)
 
-            if (!hasMore || isSummary) {
-                notificationsInServer.remove(groupId)
-            } else {
-                try {
-                    groupId?.let { notificationsInServer.put(it, notificationsInGroup) }
-                } catch (e: JSONException) {
-                    e.printStackTrace()
-                }
+            val inGroup: (DeliveredNotificationIndex.Entry) -> Boolean = { entry ->
+                if (isThreadNotification) entry.rootId == rootId else entry.channelId == channelId
+            }
+            var hasMore = DeliveredNotificationIndex.any(context, inGroup)
+            if (hasMore) {
+                // The system removes the children of a dismissed group without notifying us, make sure they are still displayed
+                DeliveredNotificationIndex.reconcile(context)
+                hasMore = DeliveredNotificationIndex.any(context, inGroup)
             }
 
-            notificationsPerServer[serverUrl] = notificationsInServer
-            saveMap(context, notificationsPerServer)
+            if (!hasMore || isSummary) {
+                NotificationGroupStore.removeGroup(context, serverUrl, groupId)
+            }
         }
     }
 
     fun removeChannelNotifications(context: Context, serverUrl: String?, channelId: String) {
-        val notificationManager = NotificationManagerCompat.from(context)
-        val notificationsPerServer = loadMap(context)
-        val notificationsInServer = notificationsPerServer[serverUrl]
-
-        if (notificationsInServer != null) {
-            notificationsInServer.remove(channelId)
-            notificationsPerServer[serverUrl] = notificationsInServer
-            saveMap(context, notificationsPerServer)
-        }
+        NotificationGroupStore.removeGroup(context, serverUrl, channelId)
 
-        val notifications = getDeliveredNotifications(context)
-        for (sbn in notifications) {
-            val n = sbn.notification
-            val bundle = n.extras
-            val cId = getChannelId(bundle)
-            val rootId = getRootId(bundle)
-            val isCRTEnabled = isCRTEnabled(bundle)
-            val skipThreadNotification = isCRTEnabled && !TextUtils.isEmpty(rootId)
-            if (cId == channelId && !skipThreadNotification) {
-                notificationManager.cancel(sbn.id)
-            }
+        val notifications = DeliveredNotificationIndex.take(context) { entry ->
+            entry.channelId == channelId && !entry.isThreadNotification
+        }
+        for (entry in notifications) {
+            NotificationDispatcher.cancel(context, entry.id)
         }
     }
 
     fun removeThreadNotifications(context: Context, serverUrl: String?, threadId: String?) {
-        val notificationManager = NotificationManagerCompat.from(context)
-        val notificationsPerServer = loadMap(context)
-        val notificationsInServer = notificationsPerServer[serverUrl]
-
-        val notifications = getDeliveredNotifications(context)
-        for (sbn in notifications) {
-            val n = sbn.notification
-            val bundle = n.extras
-            val rootId = getRootId(bundle)
-            val postId = getPostId(bundle)
-            if (rootId == threadId) {
-                notificationManager.cancel(sbn.id)
+        val notifications = DeliveredNotificationIndex.take(context) { entry ->
+            entry.rootId == threadId || entry.postId == threadId
+        }
+        for (entry in notifications) {
+            if (entry.postId == threadId && entry.channelId != null) {
+                NotificationGroupStore.remove(context, serverUrl, entry.channelId, entry.id)
             }
+            NotificationDispatcher.cancel(context, entry.id)
+        }
 
-            if (postId == threadId) {
-                val channelId = getChannelId(bundle)
-                val id = sbn.id
-                if (notificationsInServer != null && channelId != null) {
-                    val notificationsInChannel = notificationsInServer.optJSONObject(channelId)
-                    if (notificationsInChannel != null) {
-                        notificationsInChannel.remove(id.toString())
-                        try {
-                            notificationsInServer.put(channelId, notificationsInChannel)
-                        } catch (e: JSONException) {
-                            e.printStackTrace()
-                        }
-                    }
-                }
-                notificationManager.cancel(id)
-            }
+        if (threadId != null) {
+            NotificationGroupStore.removeGroup(context, serverUrl, threadId)
+        }
+    }
+
+    /**
+     * Same as calling [removeChannelNotifications] for every channel and [removeThreadNotifications] for every thread,
+     * with a single lookup of the displayed notifications and a single write of the notification groups
+     */
+    fun removeNotificationsBatch(context: Context, serverUrl: String?, channelIds: Collection<String>, threadIds: Collection<String>) {
+        if (channelIds.isEmpty() && threadIds.isEmpty()) {
+            return
         }
 
-        if (notificationsInServer != null) {
-            notificationsInServer.remove(threadId)
-            notificationsPerServer[serverUrl] = notificationsInServer
-            saveMap(context, notificationsPerServer)
+        val channels = channelIds.toHashSet()
+        val threads = threadIds.toHashSet()
+        val threadRootNotifications = ArrayList<Pair<String, Int>>()
+
+        val notifications = DeliveredNotificationIndex.take(context) { entry ->
+            (entry.channelId in channels && !entry.isThreadNotification) || entry.rootId in threads || entry.postId in threads
+        }
+        for (entry in notifications) {
+            if (entry.postId in threads && entry.channelId != null) {
+                threadRootNotifications.add(Pair(entry.channelId, entry.id))
+            }
+            NotificationDispatcher.cancel(context, entry.id)
         }
+
+        NotificationGroupStore.removeBatch(context, serverUrl, channels + threads, threadRootNotifications)
     }
 
     private fun getPostId(notification: Bundle) = notification.getString(KEY_POST_ID)
 
     fun removeServerNotifications(context: Context, serverUrl: String) {
-        val notificationManager = NotificationManagerCompat.from(context)
-        val notificationsPerServer = loadMap(context)
-        notificationsPerServer.remove(serverUrl)
-        saveMap(context, notificationsPerServer)
-        val notifications = getDeliveredNotifications(context)
-        for (sbn in notifications) {
-            val n = sbn.notification
-            val bundle = n.extras
-            val url = getServerUrl(bundle)
-            if (url == serverUrl) {
-                notificationManager.cancel(sbn.id)
-            }
+        NotificationGroupStore.removeServer(context, serverUrl)
+        val notifications = DeliveredNotificationIndex.take(context) { it.serverUrl == serverUrl }
+        for (entry in notifications) {
+            NotificationDispatcher.cancel(context, entry.id)
         }
     }
 
@@ -266,48 +200,4 @@ object NotificationHelper {
 
     private fun isCRTEnabled(bundle: Bundle) =
         bundle.containsKey(KEY_IS_CRT_ENABLED) && bundle.getString(KEY_IS_CRT_ENABLED) == "true"
-
-
-    /**
-     * Map Structure
-     *
-     * { serverUrl: { groupId: { notification1: true, notification2: false } } }
-     * summary notification has a value of true
-     *
-     */
-    private fun saveMap(context: Context, inputMap: Map<String?, JSONObject?>) {
-        val pSharedPref = context.getSharedPreferences(PUSH_NOTIFICATIONS, Context.MODE_PRIVATE)
-        if (pSharedPref != null) {
-            val json = JSONObject(inputMap)
-            val jsonString = json.toString()
-            val editor = pSharedPref.edit()
-            editor.remove(NOTIFICATIONS_IN_GROUP).apply()
-            editor.putString(NOTIFICATIONS_IN_GROUP, jsonString)
-            editor.apply()
-        }
-    }
-
-    private fun loadMap(context: Context?): MutableMap<String?, JSONObject?> {
-        val outputMap: MutableMap<String?, JSONObject?> = HashMap()
-        if (context != null) {
-            val pSharedPref = context.getSharedPreferences(PUSH_NOTIFICATIONS, Context.MODE_PRIVATE)
-            try {
-                if (pSharedPref != null) {
-                    val jsonString = pSharedPref.getString(NOTIFICATIONS_IN_GROUP, JSONObject().toString())
-                    val json = jsonString?.let { JSONObject(it) }
-                    val servers = json?.keys()
-
-                    while (servers?.hasNext() == true) {
-                        val serverUrl = servers.next()
-                        val notificationGroup = json.getJSONObject(serverUrl)
-                        outputMap[serverUrl] = notificationGroup
-                    }
-                }
-            } catch (e: Exception) {
-                e.printStackTrace()
-            }
-        }
-
-        return outputMap
-    }
 }
@@ -15,6 +15,7 @@ class Notifications {
         fun getDeliveredNotifications(promise: Promise?) {
             val applicationContext = context.applicationContext
             val notifications = NotificationHelper.getDeliveredNotifications(applicationContext)
+            DeliveredNotificationIndex.reconcile(notifications)
             val result = Arguments.createArray()
             for (sbn in notifications) {
                 val map = Arguments.createMap()
@@ -39,6 +40,11 @@ class Notifications {
             NotificationHelper.removeThreadNotifications(applicationContext, serverUrl, threadId)
         }
 
+        fun removeNotificationsBatch(serverUrl: String, channelIds: List<String>, threadIds: List<String>) {
+            val applicationContext = context.applicationContext
+            NotificationHelper.removeNotificationsBatch(applicationContext, serverUrl, channelIds, threadIds)
+        }
+
         fun removeServerNotifications(serverUrl: String) {
             val applicationContext = context.applicationContext
             NotificationHelper.removeServerNotifications(applicationContext, serverUrl)
@@ -0,0 +1,164 @@
+package com.mattermost.rnutils.helpers
+
+import android.content.Context
+import android.util.Log
+import java.io.File
+import java.io.FileWriter
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Collects the time spent in each stage of the push notification pipeline.
+ *
+ * Spans are written to a lock-free ring buffer by the threads processing the pushes and appended
+ * to a small tab separated file by [flush], so the numbers survive the process and can be attached to
+ * the logs shared by the user. [getStats] returns the p50/p95/p99 of every stage.
+ *
+ * The stages of the pipeline also register the counters they keep with [registerCounter], so they are reported
+ * along with the stage timings.
+ */
+object PushTracer {
+    private const val TAG = "PushTracer"
+    private const val CAPACITY = 512
+    private const val MAX_FILE_SIZE = 256 * 1024L
+    private const val FILE_NAME = "push_traces.tsv"
+    private const val PREVIOUS_FILE_NAME = "push_traces.1.tsv"
+
+    class Span(
+        val sequence: Long,
+        val timestamp: Long,
+        val stage: String,
+        val durationMs: Long,
+        val serverUrl: String,
+        val pushType: String,
+        val payloadSize: Int
+    )
+
+    class Stats(val stage: String, val count: Int, val p50: Long, val p95: Long, val p99: Long)
+
+    private val counters = ConcurrentHashMap<String, () -> Long>()
+    private val buffer = AtomicReferenceArray<Span?>(CAPACITY)
+    private val cursor = AtomicLong(0)
+    private val executor = Executors.newSingleThreadExecutor()
+
+    // Only read and written from the executor
+    private var flushed = 0L
+
+    fun record(stage: String, durationMs: Long, serverUrl: String?, pushType: String?, payloadSize: Int) {
+        val sequence = cursor.getAndIncrement()
+        val span = Span(
+            sequence, System.currentTimeMillis(), stage, durationMs,
+            serverUrl ?: "", pushType ?: "", payloadSize
+        )
+        buffer.set((sequence % CAPACITY).toInt(), span)
+    }
+
+    inline fun <T> trace(stage: String, serverUrl: String?, pushType: String?, payloadSize: Int, block: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            record(stage, (System.nanoTime() - start) / 1_000_000, serverUrl, pushType, payloadSize)
+        }
+    }
+
+    fun registerCounter(name: String, read: () -> Long) {
+        counters[name] = read
+    }
+
+    fun getCounters(): Map<String, Long> {
+        return counters.mapValues { it.value() }.toSortedMap()
+    }
+
+    /**
+     * Appends the spans recorded since the last flush to the traces file
+     */
+    fun flush(context: Context) {
+        val dir = context.applicationContext.filesDir
+        executor.execute { writePending(dir) }
+    }
+
+    fun getTraceFiles(context: Context): List<File> {
+        val dir = context.applicationContext.filesDir
+        executor.submit { writePending(dir) }.get()
+        return listOf(File(dir, PREVIOUS_FILE_NAME), File(dir, FILE_NAME)).filter { it.exists() }
+    }
+
+    fun getStats(context: Context): List<Stats> {
+        val durations = HashMap<String, MutableList<Long>>()
+        getTraceFiles(context).forEach { file ->
+            file.forEachLine { line ->
+                val columns = line.split('\t')
+                if (columns.size >= 3) {
+                    columns[2].toLongOrNull()?.let {
+                        durations.getOrPut(columns[1]) { ArrayList() }.add(it)
+                    }
+                }
+            }
+        }
+
+        return durations.map { (stage, values) ->
+            values.sort()
+            Stats(stage, values.size, percentile(values, 50), percentile(values, 95), percentile(values, 99))
+        }.sortedBy { it.stage }
+    }
+
+    fun getStatsSummary(context: Context): String {
+        val builder = StringBuilder("stage\tcount\tp50_ms\tp95_ms\tp99_ms\n")
+        getStats(context).forEach {
+            builder.append(String.format(Locale.US, "%s\t%d\t%d\t%d\t%d\n", it.stage, it.count, it.p50, it.p95, it.p99))
+        }
+
+        builder.append("\ncounter\tvalue\n")
+        getCounters().forEach { (name, value) ->
+            builder.append(name).append('\t').append(value).append('\n')
+        }
+        return builder.toString()
+    }
+
+    private fun percentile(sorted: List<Long>, percent: Int): Long {
+        val index = ((percent / 100.0) * sorted.size).toInt().coerceIn(0, sorted.size - 1)
+        return sorted[index]
+    }
+
+    private fun writePending(dir: File) {
+        val end = cursor.get()
+        if (end - flushed > CAPACITY) {
+            // The buffer wrapped before it could be written, the oldest spans are lost
+            flushed = end - CAPACITY
+        }
+        if (flushed == end) {
+            return
+        }
+
+        try {
+            val file = File(dir, FILE_NAME)
+            if (file.length() > MAX_FILE_SIZE) {
+                file.renameTo(File(dir, PREVIOUS_FILE_NAME))
+            }
+
+            FileWriter(file, true).use { writer ->
+                while (flushed < end) {
+                    val span = buffer.get((flushed % CAPACITY).toInt())
+                    if (span == null || span.sequence != flushed) {
+                        // Claimed but not written yet, it will be picked up by the next flush
+                        break
+                    }
+                    writer.append(
+                        String.format(
+                            Locale.US, "%d\t%s\t%d\t%s\t%s\t%d\n",
+                            span.timestamp, span.stage, span.durationMs,
+                            span.serverUrl, span.pushType, span.payloadSize
+                        )
+                    )
+                    flushed++
+                }
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Could not write the push traces", e)
+        }
+    }
+}
@@ -53,6 +53,10 @@ class RNUtilsModule(val reactContext: ReactApplicationContext) : NativeRNUtilsSp
         return implementation.deleteEntitiesFile()
     }
 
+    override fun getPushNotificationStats(promise: Promise?) {
+        implementation.getPushNotificationStats(promise)
+    }
+
     override fun getDeliveredNotifications(promise: Promise?) {
         implementation.getDeliveredNotifications(promise)
     }
@@ -65,6 +69,12 @@ class RNUtilsModule(val reactContext: ReactApplicationContext) : NativeRNUtilsSp
         implementation.removeThreadNotifications(serverUrl, threadId)
     }
 
+    override fun removeNotificationsBatch(serverUrl: String?, channelIds: ReadableArray, threadIds: ReadableArray) {
+        val channelIdList = channelIds.toArrayList().map { it.toString() }
+        val threadIdList = threadIds.toArrayList().map { it.toString() }
+        implementation.removeNotificationsBatch(serverUrl, channelIdList, threadIdList)
+    }
+
     override fun removeServerNotifications(serverUrl: String?) {
         implementation.removeServerNotifications(serverUrl)
     }
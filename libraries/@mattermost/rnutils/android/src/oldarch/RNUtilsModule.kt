@@ -81,6 +81,11 @@ class RNUtilsModule(context: ReactApplicationContext) :
         return implementation.deleteEntitiesFile()
     }
 
+    @ReactMethod
+    fun getPushNotificationStats(promise: Promise?) {
+        implementation.getPushNotificationStats(promise)
+    }
+
     @ReactMethod
     fun getDeliveredNotifications(promise: Promise?) {
         implementation.getDeliveredNotifications(promise)
@@ -96,6 +101,13 @@ class RNUtilsModule(context: ReactApplicationContext) :
         implementation.removeThreadNotifications(serverUrl, threadId)
     }
 
+    @ReactMethod
+    fun removeNotificationsBatch(serverUrl: String?, channelIds: ReadableArray, threadIds: ReadableArray) {
+        val channelIdList = channelIds.toArrayList().map { it.toString() }
+        val threadIdList = threadIds.toArrayList().map { it.toString() }
+        implementation.removeNotificationsBatch(serverUrl, channelIdList, threadIdList)
+    }
+
     @ReactMethod
     fun removeServerNotifications(serverUrl: String?) {
         implementation.removeServerNotifications(serverUrl)
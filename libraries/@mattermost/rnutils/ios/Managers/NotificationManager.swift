@@ -96,6 +96,31 @@ import React
         })
     }
     
+    @objc public func removeNotificationsBatch(serverUrl: String, channelIds: [String], threadIds: [String]) {
+        let channels = Set(channelIds)
+        let threads = Set(threadIds)
+        notificationCenter.getDeliveredNotifications(completionHandler: {notifications in
+            var notificationIds = [String]()
+            
+            for notification in notifications {
+                let request = notification.request
+                let content = request.content
+                let identifier = request.identifier
+                let cId = content.userInfo["channel_id"] as? String ?? ""
+                let postId = content.userInfo["post_id"] as? String ?? ""
+                let rootId = content.userInfo["root_id"] as? String ?? ""
+                let crtEnabled = content.userInfo["is_crt_enabled"] as? Bool ?? false
+                let skipThreadNotification = !rootId.isEmpty && crtEnabled
+                
+                if (channels.contains(cId) && !skipThreadNotification) || threads.contains(rootId) || threads.contains(postId) {
+                    notificationIds.append(identifier)
+                }
+            }
+            
+            self.notificationCenter.removeDeliveredNotifications(withIdentifiers: notificationIds)
+        })
+    }
+    
     @objc public func removeServerNotifications(serverUrl: String) {
         notificationCenter.getDeliveredNotifications(completionHandler: {notifications in
             var notificationIds = [String]()
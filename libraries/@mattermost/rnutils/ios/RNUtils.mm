@@ -92,6 +92,11 @@ RCT_REMAP_METHOD(lockPortrait, portrait) {
     [wrapper lockOrientation];
 }
 
+RCT_EXPORT_METHOD(getPushNotificationStats:(RCTPromiseResolveBlock)resolve
+                  withRejecter:(RCTPromiseRejectBlock)reject) {
+    [self getPushNotificationStats:resolve reject:reject];
+}
+
 RCT_EXPORT_METHOD(getDeliveredNotifications:(RCTPromiseResolveBlock)resolve
                   withRejecter:(RCTPromiseRejectBlock)reject) {
     [self getNotifications:resolve];
@@ -107,6 +112,12 @@ RCT_REMAP_METHOD(removeThreadNotifications, server:(NSString *)serverUrl
     [self removeThreadNotifications:serverUrl threadId:threadId];
 }
 
+RCT_REMAP_METHOD(removeNotificationsBatch, serverUrl:(NSString *)serverUrl
+                  channelIds:(NSArray<NSString *> *)channelIds
+                  threadIds:(NSArray<NSString *> *)threadIds) {
+    [self removeNotificationsBatch:serverUrl channelIds:channelIds threadIds:threadIds];
+}
+
 RCT_REMAP_METHOD(removeServerNotifications, serverUrl:(NSString *)serverUrl) {
     [self removeServerNotifications:serverUrl];
 }
@@ -205,6 +216,11 @@ RCT_EXPORT_METHOD(createZipFile:(NSArray<NSString *> *)paths
 }
 
 
+- (void)getPushNotificationStats:(RCTPromiseResolveBlock)resolve reject:(RCTPromiseRejectBlock)reject {
+    // The push notification stages are only traced on Android
+    resolve(@{@"stages": @[], @"counters": @{}});
+}
+
 - (void)getDeliveredNotifications:(RCTPromiseResolveBlock)resolve reject:(RCTPromiseRejectBlock)reject {
     [self getNotifications:resolve];
 }
@@ -218,6 +234,10 @@ RCT_EXPORT_METHOD(createZipFile:(NSArray<NSString *> *)paths
     [[NotificationManager shared] removeThreadNotificationsWithServerUrl:serverUrl threadId:threadId];
 }
 
+- (void)removeNotificationsBatch:(NSString *)serverUrl channelIds:(NSArray<NSString *> *)channelIds threadIds:(NSArray<NSString *> *)threadIds {
+    [[NotificationManager shared] removeNotificationsBatchWithServerUrl:serverUrl channelIds:channelIds threadIds:threadIds];
+}
+
 - (void)removeServerNotifications:(NSString *)serverUrl {
     [[NotificationManager shared] removeServerNotificationsWithServerUrl:serverUrl];
 }
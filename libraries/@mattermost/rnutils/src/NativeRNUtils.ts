@@ -28,6 +28,19 @@ type Notification = Readonly<{
   root_id?: string;
 }>
 
+type PushNotificationStageStats = Readonly<{
+  stage: string;
+  count: Int32;
+  p50: Double;
+  p95: Double;
+  p99: Double;
+}>
+
+type PushNotificationStats = Readonly<{
+  stages: PushNotificationStageStats[];
+  counters: UnsafeObject;
+}>
+
 type Constants = Readonly<{
   appGroupIdentifier: string;
   appGroupSharedDirectory: Readonly<{
@@ -66,9 +79,11 @@ export interface Spec extends TurboModule {
     renameDatabase: (databaseName: string, newDatabaseName: string) => DatabaseOperationResult;
     deleteEntitiesFile: () => boolean;
 
+    getPushNotificationStats(): Promise<PushNotificationStats>;
     getDeliveredNotifications(): Promise<Notification[]>;
     removeChannelNotifications(serverUrl: string, channelId: string): void;
     removeThreadNotifications(serverUrl: string, threadId: string): void;
+    removeNotificationsBatch(serverUrl: string, channelIds: string[], threadIds: string[]): void;
     removeServerNotifications(serverUrl: string): void;
 
     setSoftKeyboardToAdjustResize(): void;
@@ -231,9 +231,11 @@ jest.doMock('react-native', () => {
             getHasRegisteredLoad: jest.fn().mockReturnValue({hasRegisteredLoad: false}),
             setHasRegisteredLoad: jest.fn(),
 
+            getPushNotificationStats: jest.fn().mockResolvedValue({stages: [], counters: {}}),
             getDeliveredNotifications: jest.fn().mockResolvedValue([]),
             removeChannelNotifications: jest.fn().mockImplementation(),
             removeThreadNotifications: jest.fn().mockImplementation(),
+            removeNotificationsBatch: jest.fn().mockImplementation(),
             removeServerNotifications: jest.fn().mockImplementation(),
 
             createZipFile: jest.fn(),